@@ -0,0 +1,54 @@
+package com.example.lox.jlox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs already-resolved programs on a fresh interpreter per invocation.
+ * Output from print statements is discarded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+    @Param({"fib.lx", "loop.lx", "closure.lx",
+            "fib25", "nested-loops", "string-concat", "closure-counter"})
+    String program;
+
+    private List<Stmt> statements;
+    private ErrorReporter reporter;
+
+    @Setup
+    public void setUp() {
+        statements = Programs.compile(Programs.load(program));
+        reporter = Programs.reporter();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (reporter.hadRuntimeError) {
+            throw new IllegalStateException(program + " failed at runtime.");
+        }
+    }
+
+    @Benchmark
+    public void interpret() {
+        new Interpreter(reporter, Programs.DISCARD).interpret(statements);
+    }
+}
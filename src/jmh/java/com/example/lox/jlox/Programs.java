@@ -0,0 +1,124 @@
+package com.example.lox.jlox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Lox sources shared by the benchmarks: the sample scripts in lox/,
+ * CPU-bound workloads, and generated programs sized for the front end.
+ */
+final class Programs {
+    static final PrintStream DISCARD =
+            new PrintStream(OutputStream.nullOutputStream());
+
+    private Programs() {
+    }
+
+    /**
+     * Returns a script from lox/ when the name ends in ".lx", otherwise one
+     * of the built-in workloads.
+     */
+    static String load(String name) {
+        if (name.endsWith(".lx")) {
+            try {
+                return Files.readString(Path.of("lox", name));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        switch (name) {
+            case "fib25":
+                return "fun fib(n) {\n" +
+                       "  if (n <= 1) return n;\n" +
+                       "  return fib(n - 2) + fib(n - 1);\n" +
+                       "}\n" +
+                       "print fib(25);\n";
+            case "nested-loops":
+                return "var sum = 0;\n" +
+                       "for (var i = 0; i < 300; i = i + 1) {\n" +
+                       "  for (var j = 0; j < 300; j = j + 1) {\n" +
+                       "    sum = sum + i * j - j / 2;\n" +
+                       "  }\n" +
+                       "}\n" +
+                       "print sum;\n";
+            case "string-concat":
+                return "var s = \"\";\n" +
+                       "for (var i = 0; i < 2000; i = i + 1) {\n" +
+                       "  s = s + \"x\";\n" +
+                       "}\n" +
+                       "print s == \"\";\n";
+            case "closure-counter":
+                return "fun makeCounter() {\n" +
+                       "  var i = 0;\n" +
+                       "  fun count() {\n" +
+                       "    i = i + 1;\n" +
+                       "    return i;\n" +
+                       "  }\n" +
+                       "  return count;\n" +
+                       "}\n" +
+                       "var counter = makeCounter();\n" +
+                       "var last = 0;\n" +
+                       "while (last < 50000) last = counter();\n" +
+                       "print last;\n";
+            default:
+                throw new IllegalArgumentException("Unknown program: " + name);
+        }
+    }
+
+    /** Many short top-level declarations and statements. */
+    static String wide(int statements) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < statements; i++) {
+            switch (i % 4) {
+                case 0 -> source.append("var v").append(i).append(" = ")
+                        .append(i).append(" * 2 + 1;\n");
+                case 1 -> source.append("fun f").append(i).append("(a, b) {\n")
+                        .append("  if (a < b) return a - b;\n")
+                        .append("  return \"str\" + \"ing\";\n}\n");
+                case 2 -> source.append("while (v").append(i - 2)
+                        .append(" > 0) v").append(i - 2).append(" = v")
+                        .append(i - 2).append(" - 1;\n");
+                default -> source.append("print f").append(i - 2)
+                        .append("(v").append(i - 3).append(", ").append(i)
+                        .append(") == nil or !true; // comment\n");
+            }
+        }
+        return source.toString();
+    }
+
+    /** Nested blocks, each holding a chain of unary operators. */
+    static String deep(int depth) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            source.append("{ var x").append(i).append(" = ");
+            for (int j = 0; j < 8; j++) source.append("-");
+            source.append(i).append(";\n");
+        }
+        for (int i = 0; i < depth; i++) source.append("}\n");
+        return source.toString();
+    }
+
+    /** A reporter that prints errors the way the jlox command does. */
+    static ErrorReporter reporter() {
+        return new ErrorReporter(ErrorSink.printingTo(System.err));
+    }
+
+    /** Scans, parses and resolves a program that is known to be valid. */
+    static List<Stmt> compile(String source) {
+        ErrorReporter reporter = reporter();
+        TokenBuffer tokens = new Scanner(source, reporter).scanTokens();
+        List<Stmt> statements = new Parser(tokens, reporter).parse();
+        new Resolver(reporter).resolve(statements);
+
+        if (reporter.hadError) {
+            throw new IllegalStateException("Benchmark program has errors.");
+        }
+        return statements;
+    }
+}
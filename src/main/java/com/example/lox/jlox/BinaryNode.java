@@ -0,0 +1,165 @@
+package com.example.lox.jlox;
+
+abstract class BinaryNode {
+    static final BinaryNode UNINITIALIZED = new Uninitialized();
+    static final BinaryNode GENERIC = new Generic();
+    static final BinaryNode ADD_DOUBLE = new AddDouble();
+    static final BinaryNode ADD_STRING = new AddString();
+    static final BinaryNode GREATER_DOUBLE = new GreaterDouble();
+    static final BinaryNode GREATER_EQUAL_DOUBLE = new GreaterEqualDouble();
+    static final BinaryNode LESS_DOUBLE = new LessDouble();
+    static final BinaryNode LESS_EQUAL_DOUBLE = new LessEqualDouble();
+    static final BinaryNode EQUAL_DOUBLE = new EqualDouble();
+    static final BinaryNode NOT_EQUAL_DOUBLE = new NotEqualDouble();
+
+    abstract Object execute(Expr.Binary expr, Object left, Object right);
+
+    static BinaryNode specialize(TokenType operator, Object left, Object right) {
+        switch (operator) {
+            case PLUS:
+                if (left instanceof Double && right instanceof Double) return ADD_DOUBLE;
+                if (left instanceof CharSequence && right instanceof CharSequence) return ADD_STRING;
+                break;
+            case GREATER:
+                if (left instanceof Double && right instanceof Double) return GREATER_DOUBLE;
+                break;
+            case GREATER_EQUAL:
+                if (left instanceof Double && right instanceof Double) return GREATER_EQUAL_DOUBLE;
+                break;
+            case LESS:
+                if (left instanceof Double && right instanceof Double) return LESS_DOUBLE;
+                break;
+            case LESS_EQUAL:
+                if (left instanceof Double && right instanceof Double) return LESS_EQUAL_DOUBLE;
+                break;
+            case EQUAL_EQUAL:
+                if (left instanceof Double && right instanceof Double) return EQUAL_DOUBLE;
+                break;
+            case BANG_EQUAL:
+                if (left instanceof Double && right instanceof Double) return NOT_EQUAL_DOUBLE;
+                break;
+        }
+
+        return GENERIC;
+    }
+
+    static class Uninitialized extends BinaryNode {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            BinaryNode node = specialize(expr.operator.type, left, right);
+            expr.node = node;
+            return node.execute(expr, left, right);
+        }
+    }
+
+    static class Generic extends BinaryNode {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            return Interpreter.binary(expr.operator, left, right);
+        }
+    }
+
+    static class AddDouble extends BinaryNode {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return Numbers.box((double) left + (double) right);
+            }
+
+            // Type miss. Stop specializing this site.
+            expr.node = GENERIC;
+            return GENERIC.execute(expr, left, right);
+        }
+    }
+
+    static class AddString extends BinaryNode {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (left instanceof CharSequence && right instanceof CharSequence) {
+                return Interpreter.concatenate((CharSequence) left, (CharSequence) right);
+            }
+
+            // Type miss. Stop specializing this site.
+            expr.node = GENERIC;
+            return GENERIC.execute(expr, left, right);
+        }
+    }
+
+    static class GreaterDouble extends BinaryNode {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left > (double) right;
+            }
+
+            // Type miss. Stop specializing this site.
+            expr.node = GENERIC;
+            return GENERIC.execute(expr, left, right);
+        }
+    }
+
+    static class GreaterEqualDouble extends BinaryNode {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left >= (double) right;
+            }
+
+            // Type miss. Stop specializing this site.
+            expr.node = GENERIC;
+            return GENERIC.execute(expr, left, right);
+        }
+    }
+
+    static class LessDouble extends BinaryNode {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left < (double) right;
+            }
+
+            // Type miss. Stop specializing this site.
+            expr.node = GENERIC;
+            return GENERIC.execute(expr, left, right);
+        }
+    }
+
+    static class LessEqualDouble extends BinaryNode {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left <= (double) right;
+            }
+
+            // Type miss. Stop specializing this site.
+            expr.node = GENERIC;
+            return GENERIC.execute(expr, left, right);
+        }
+    }
+
+    static class EqualDouble extends BinaryNode {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return left.equals(right);
+            }
+
+            // Type miss. Stop specializing this site.
+            expr.node = GENERIC;
+            return GENERIC.execute(expr, left, right);
+        }
+    }
+
+    static class NotEqualDouble extends BinaryNode {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return !left.equals(right);
+            }
+
+            // Type miss. Stop specializing this site.
+            expr.node = GENERIC;
+            return GENERIC.execute(expr, left, right);
+        }
+    }
+}
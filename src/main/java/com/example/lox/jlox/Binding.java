@@ -0,0 +1,18 @@
+package com.example.lox.jlox;
+
+/**
+ * The storage cell for one global variable. A cell is created the first
+ * time its name is defined and is never replaced, so redefining the
+ * variable only changes {@link #value} and any reference that has cached
+ * the cell keeps seeing the current value.
+ */
+final class Binding {
+    /** The global scope the cell belongs to. */
+    final Environment owner;
+    Object value;
+
+    Binding(Environment owner, Object value) {
+        this.owner = owner;
+        this.value = value;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.lox.jlox;
+
+/**
+ * Self-specializing call site for Expr.Call. A site that keeps calling the
+ * same function declaration skips the callable and arity checks after the
+ * first call; any other callee rewrites the site to the generic node for
+ * good. Guarding on the declaration rather than the function object keeps
+ * a site specialized across closures, and across interpreters running the
+ * same {@link LoxProgram}.
+ */
+abstract class CallNode {
+    static final CallNode UNINITIALIZED = new Uninitialized();
+    static final CallNode GENERIC = new Generic();
+
+    abstract Object execute(Interpreter interpreter, Expr.Call expr,
+                            Object callee);
+
+    static class Uninitialized extends CallNode {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Call expr,
+                       Object callee) {
+            CallNode node = GENERIC;
+            if (callee instanceof LoxFunction &&
+                ((LoxFunction) callee).arity() == expr.arguments.size()) {
+                node = new CallKnownFunction(((LoxFunction) callee).declaration);
+            }
+
+            expr.node = node;
+            return node.execute(interpreter, expr, callee);
+        }
+    }
+
+    static class Generic extends CallNode {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Call expr,
+                       Object callee) {
+            return interpreter.call(expr, callee);
+        }
+    }
+
+    static class CallKnownFunction extends CallNode {
+        private final Stmt.Function declaration;
+
+        CallKnownFunction(Stmt.Function declaration) {
+            this.declaration = declaration;
+        }
+
+        @Override
+        Object execute(Interpreter interpreter, Expr.Call expr,
+                       Object callee) {
+            // The argument count at a site never changes, so matching the
+            // declaration is enough to know the arity matches too. The
+            // check has no side effects, so it can happen before the
+            // arguments are evaluated.
+            if (callee instanceof LoxFunction &&
+                ((LoxFunction) callee).declaration == declaration) {
+                return interpreter.callFunction(expr, (LoxFunction) callee);
+            }
+
+            expr.node = GENERIC;
+            return GENERIC.execute(interpreter, expr, callee);
+        }
+    }
+}
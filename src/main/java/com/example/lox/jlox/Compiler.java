@@ -0,0 +1,563 @@
+package com.example.lox.jlox;
+
+import com.example.lox.jlox.vm.Chunk;
+import com.example.lox.jlox.vm.CompiledFunction;
+import com.example.lox.jlox.vm.OpCode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles a resolved syntax tree to bytecode for the {@link
+ * com.example.lox.jlox.vm.VM}. Locals live in stack slots and variables
+ * captured by closures become upvalues, so the compiler keeps its own view
+ * of scopes rather than using the tree-walker's environment addresses. It
+ * scopes names the way the {@link Resolver} does, reserving a nil slot for
+ * each local function at the start of its block.
+ */
+class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final int UINT8_COUNT = 256;
+    private static final int UINT16_MAX = 65535;
+
+    // How each instruction changes the height of the stack, by opcode.
+    // Calls also pop their arguments, which visitCallExpr accounts for.
+    private static final int[] STACK_EFFECTS = {
+            1, 1, 1, 1, -1,             // CONSTANT, NIL, TRUE, FALSE, POP
+            1, 0, 1, -1, 0,             // GET_LOCAL .. SET_GLOBAL
+            1, 0,                       // GET_UPVALUE, SET_UPVALUE
+            -1, -1, -1, -1, -1, -1,     // EQUAL .. LESS_EQUAL
+            -1, -1, -1, -1,             // ADD .. DIVIDE
+            0, 0, -1,                   // NOT, NEGATE, PRINT
+            0, 0, 0,                    // JUMP, JUMP_IF_FALSE, LOOP
+            0, 1, -1, -1,               // CALL, CLOSURE, CLOSE_UPVALUE, RETURN
+            0                           // TAIL_CALL
+    };
+
+    private final ErrorReporter reporter;
+    private FunctionState current;
+    private int line = 1;
+
+    Compiler(ErrorReporter reporter) {
+        this.reporter = reporter;
+    }
+
+    CompiledFunction compile(List<Stmt> statements) {
+        current = new FunctionState(null, new CompiledFunction(null, 0));
+
+        for (Stmt statement : statements) {
+            compile(statement);
+        }
+
+        emitReturn();
+        current.function.setMaxStack(current.maxStack);
+        return current.function;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        hoistFunctions(stmt.statements);
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        line = stmt.name.line;
+        if (current.scopeDepth == 0) {
+            function(stmt);
+            emitWithShort(OpCode.DEFINE_GLOBAL, identifierConstant(stmt.name));
+            return null;
+        }
+
+        int existing = localInCurrentScope(stmt.name);
+        if (existing != -1) {
+            current.locals.get(existing).hoisted = false;
+            function(stmt);
+            emitWithByte(OpCode.SET_LOCAL, existing);
+            emit(OpCode.POP);
+            return null;
+        }
+
+        // Declare the name first so the function can refer to itself.
+        addLocal(stmt.name);
+        function(stmt);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        compile(stmt.condition);
+        int conditionHeight = current.stackHeight;
+
+        int thenJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+        compile(stmt.thenBranch);
+
+        int elseJump = emitJump(OpCode.JUMP);
+        patchJump(thenJump);
+        // The else path still has the condition on the stack.
+        current.stackHeight = conditionHeight;
+        emit(OpCode.POP);
+
+        if (stmt.elseBranch != null) compile(stmt.elseBranch);
+        patchJump(elseJump);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emit(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        line = stmt.keyword.line;
+        if (stmt.value == null) {
+            emit(OpCode.NIL);
+        } else if (stmt.tailCall) {
+            Expr.Call call = (Expr.Call) stmt.value;
+            compile(call.callee);
+            for (Expr argument : call.arguments) {
+                compile(argument);
+            }
+
+            line = call.paren.line;
+            emitWithByte(OpCode.TAIL_CALL, call.arguments.size());
+            current.stackHeight -= call.arguments.size();
+        } else {
+            compile(stmt.value);
+        }
+
+        emit(OpCode.RETURN);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        line = stmt.name.line;
+        if (stmt.initializer == null) {
+            emit(OpCode.NIL);
+        } else {
+            compile(stmt.initializer);
+        }
+
+        if (current.scopeDepth == 0) {
+            emitWithShort(OpCode.DEFINE_GLOBAL, identifierConstant(stmt.name));
+            return null;
+        }
+
+        // Redeclaring a local in the same scope just overwrites it.
+        int existing = localInCurrentScope(stmt.name);
+        if (existing != -1) {
+            current.locals.get(existing).hoisted = false;
+            emitWithByte(OpCode.SET_LOCAL, existing);
+            emit(OpCode.POP);
+            return null;
+        }
+
+        // The initializer's value is already sitting in the new slot.
+        addLocal(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = chunk().count();
+        compile(stmt.condition);
+        int conditionHeight = current.stackHeight;
+
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+        compile(stmt.body);
+        emitLoop(loopStart);
+
+        patchJump(exitJump);
+        current.stackHeight = conditionHeight;
+        emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+        line = expr.name.line;
+        emitVariable(expr.name, OpCode.SET_LOCAL, OpCode.SET_UPVALUE,
+                OpCode.SET_GLOBAL);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case BANG_EQUAL -> emit(OpCode.NOT_EQUAL);
+            case EQUAL_EQUAL -> emit(OpCode.EQUAL);
+            case GREATER -> emit(OpCode.GREATER);
+            case GREATER_EQUAL -> emit(OpCode.GREATER_EQUAL);
+            case LESS -> emit(OpCode.LESS);
+            case LESS_EQUAL -> emit(OpCode.LESS_EQUAL);
+            case PLUS -> emit(OpCode.ADD);
+            case MINUS -> emit(OpCode.SUBTRACT);
+            case STAR -> emit(OpCode.MULTIPLY);
+            case SLASH -> emit(OpCode.DIVIDE);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        compile(expr.callee);
+        for (Expr argument : expr.arguments) {
+            compile(argument);
+        }
+
+        line = expr.paren.line;
+        emitWithByte(OpCode.CALL, expr.arguments.size());
+        current.stackHeight -= expr.arguments.size();
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emit(OpCode.NIL);
+        } else if (expr.value instanceof Boolean) {
+            emit((boolean) expr.value ? OpCode.TRUE : OpCode.FALSE);
+        } else {
+            emitWithShort(OpCode.CONSTANT, makeConstant(expr.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+
+        if (expr.operator.type == TokenType.OR) {
+            int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+            int endJump = emitJump(OpCode.JUMP);
+
+            patchJump(elseJump);
+            emit(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        } else {
+            int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+
+            emit(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case BANG -> emit(OpCode.NOT);
+            case MINUS -> emit(OpCode.NEGATE);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        line = expr.name.line;
+        emitVariable(expr.name, OpCode.GET_LOCAL, OpCode.GET_UPVALUE,
+                OpCode.GET_GLOBAL);
+        return null;
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void function(Stmt.Function stmt) {
+        CompiledFunction function =
+                new CompiledFunction(stmt.name.lexeme, stmt.params.size());
+        current = new FunctionState(current, function);
+        beginScope();
+
+        // The arguments are already on the stack.
+        for (Token param : stmt.params) {
+            addLocal(param);
+        }
+        adjustStack(stmt.params.size());
+
+        hoistFunctions(stmt.body);
+        for (Stmt statement : stmt.body) {
+            compile(statement);
+        }
+
+        emitReturn();
+
+        FunctionState compiled = current;
+        current = compiled.enclosing;
+        function.setUpvalueCount(compiled.upvalues.size());
+        function.setMaxStack(compiled.maxStack);
+
+        line = stmt.name.line;
+        emitWithShort(OpCode.CLOSURE, makeConstant(function));
+        for (Upvalue upvalue : compiled.upvalues) {
+            emitOperand(upvalue.isLocal ? (byte) 1 : (byte) 0);
+            emitOperand((byte) upvalue.index);
+        }
+    }
+
+    private void emitVariable(Token name, byte local, byte upvalue, byte global) {
+        int slot = resolveLocal(current, name);
+        if (slot != -1) {
+            emitWithByte(local, slot);
+            return;
+        }
+
+        slot = resolveUpvalue(current, name);
+        if (slot != -1) {
+            emitWithByte(upvalue, slot);
+            return;
+        }
+
+        emitWithShort(global, identifierConstant(name));
+    }
+
+    private int resolveLocal(FunctionState state, Token name) {
+        // Search from the innermost local so the last declaration wins. A
+        // function not yet declared is only visible to inner functions.
+        for (int i = state.locals.size() - 1; i >= 0; i--) {
+            Local local = state.locals.get(i);
+            if (name.lexeme.equals(local.name) &&
+                !(local.hoisted && state == current)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private int resolveUpvalue(FunctionState state, Token name) {
+        if (state.enclosing == null) return -1;
+
+        int local = resolveLocal(state.enclosing, name);
+        if (local != -1) {
+            state.enclosing.locals.get(local).isCaptured = true;
+            return addUpvalue(state, local, true, name);
+        }
+
+        int upvalue = resolveUpvalue(state.enclosing, name);
+        if (upvalue != -1) {
+            return addUpvalue(state, upvalue, false, name);
+        }
+
+        return -1;
+    }
+
+    private int addUpvalue(FunctionState state, int index, boolean isLocal,
+                           Token name) {
+        for (int i = 0; i < state.upvalues.size(); i++) {
+            Upvalue upvalue = state.upvalues.get(i);
+            if (upvalue.index == index && upvalue.isLocal == isLocal) return i;
+        }
+
+        if (state.upvalues.size() == UINT8_COUNT) {
+            reporter.error(name, "Too many closure variables in function.");
+            return 0;
+        }
+
+        state.upvalues.add(new Upvalue(index, isLocal));
+        return state.upvalues.size() - 1;
+    }
+
+    private int localInCurrentScope(Token name) {
+        for (int i = current.locals.size() - 1; i >= 0; i--) {
+            Local local = current.locals.get(i);
+            if (local.depth < current.scopeDepth) break;
+            if (name.lexeme.equals(local.name)) return i;
+        }
+
+        return -1;
+    }
+
+    /** Reserves slots for the functions declared directly in a block. */
+    private void hoistFunctions(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (!(statement instanceof Stmt.Function)) continue;
+
+            Token name = ((Stmt.Function) statement).name;
+            if (localInCurrentScope(name) != -1) continue;
+
+            line = name.line;
+            emit(OpCode.NIL);
+            addLocal(name);
+            current.locals.get(current.locals.size() - 1).hoisted = true;
+        }
+    }
+
+    private void addLocal(Token name) {
+        if (current.locals.size() == UINT8_COUNT) {
+            reporter.error(name, "Too many local variables in function.");
+            return;
+        }
+
+        current.locals.add(new Local(name.lexeme, current.scopeDepth));
+    }
+
+    private void beginScope() {
+        current.scopeDepth++;
+    }
+
+    private void endScope() {
+        current.scopeDepth--;
+
+        List<Local> locals = current.locals;
+        while (!locals.isEmpty() &&
+               locals.get(locals.size() - 1).depth > current.scopeDepth) {
+            emit(locals.get(locals.size() - 1).isCaptured
+                    ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+            locals.remove(locals.size() - 1);
+        }
+    }
+
+    private int identifierConstant(Token name) {
+        return makeConstant(name.lexeme);
+    }
+
+    private int makeConstant(Object value) {
+        int constant = chunk().addConstant(value);
+        if (constant > UINT16_MAX) {
+            reporter.error(line, "Too many constants in one chunk.");
+            return 0;
+        }
+
+        return constant;
+    }
+
+    private Chunk chunk() {
+        return current.function.chunk();
+    }
+
+    private void emit(byte op) {
+        chunk().write(op, line);
+        adjustStack(STACK_EFFECTS[op]);
+    }
+
+    private void emitOperand(byte value) {
+        chunk().write(value, line);
+    }
+
+    private void emitWithByte(byte op, int operand) {
+        emit(op);
+        emitOperand((byte) operand);
+    }
+
+    private void emitWithShort(byte op, int operand) {
+        emit(op);
+        emitOperand((byte) ((operand >> 8) & 0xff));
+        emitOperand((byte) (operand & 0xff));
+    }
+
+    private void adjustStack(int delta) {
+        current.stackHeight += delta;
+        if (current.stackHeight > current.maxStack) {
+            current.maxStack = current.stackHeight;
+        }
+    }
+
+    private int emitJump(byte op) {
+        emitWithShort(op, 0xffff);
+        return chunk().count() - 2;
+    }
+
+    private void patchJump(int offset) {
+        // -2 to adjust for the bytecode for the jump offset itself.
+        int jump = chunk().count() - offset - 2;
+        if (jump > UINT16_MAX) {
+            reporter.error(line, "Too much code to jump over.");
+        }
+
+        chunk().patch(offset, (byte) ((jump >> 8) & 0xff));
+        chunk().patch(offset + 1, (byte) (jump & 0xff));
+    }
+
+    private void emitLoop(int loopStart) {
+        int offset = chunk().count() - loopStart + 3;
+        if (offset > UINT16_MAX) reporter.error(line, "Loop body too large.");
+
+        emitWithShort(OpCode.LOOP, offset);
+    }
+
+    private void emitReturn() {
+        emit(OpCode.NIL);
+        emit(OpCode.RETURN);
+    }
+
+    private static class FunctionState {
+        final FunctionState enclosing;
+        final CompiledFunction function;
+        final List<Local> locals = new ArrayList<>();
+        final List<Upvalue> upvalues = new ArrayList<>();
+        int scopeDepth = 0;
+        // Slots in use at the current instruction, and the most ever used.
+        int stackHeight = 1;
+        int maxStack = 1;
+
+        FunctionState(FunctionState enclosing, CompiledFunction function) {
+            this.enclosing = enclosing;
+            this.function = function;
+
+            // Slot zero holds the function being called.
+            locals.add(new Local("", 0));
+        }
+    }
+
+    private static class Local {
+        final String name;
+        final int depth;
+        boolean isCaptured = false;
+        // A function with a reserved slot whose declaration is still ahead.
+        boolean hoisted = false;
+
+        Local(String name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    private static class Upvalue {
+        final int index;
+        final boolean isLocal;
+
+        Upvalue(int index, boolean isLocal) {
+            this.index = index;
+            this.isLocal = isLocal;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.lox.jlox;
+
+/**
+ * How a statement finished executing. Anything other than {@link #NORMAL}
+ * makes the enclosing blocks and loops stop and pass the signal outward
+ * until the construct that handles it, instead of unwinding the Java stack
+ * with an exception. Runtime errors are the only thing still thrown.
+ */
+enum Completion {
+    NORMAL,
+
+    /** A return statement ran; the interpreter holds its value. */
+    RETURN,
+
+    /**
+     * A return statement's value is a call the function has yet to make.
+     * The interpreter holds the callee and its arguments, and the function
+     * that is returning makes the call in place of its own body.
+     */
+    TAIL_CALL
+}
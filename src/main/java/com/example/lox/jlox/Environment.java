@@ -1,47 +1,127 @@
 package com.example.lox.jlox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
+/**
+ * Runtime storage for variables.
+ * <p>
+ * Local scopes are plain arrays addressed by the slot index the
+ * {@link Resolver} assigned to each declaration. Globals can be referenced
+ * before they are defined, so the global scope is keyed by name instead,
+ * using the name's id in {@link SymbolTable#GLOBAL} as an index.
+ * <p>
+ * Each global lives in a {@link Binding} cell that the interpreter caches
+ * at every site that reads or assigns it, so after the first lookup a
+ * global costs no more than a field access.
+ * <p>
+ * Spawned tasks share the globals, so the cells are stored in fixed-size
+ * pages. Making room for a new name adds a page rather than copying the
+ * directory's contents, so a definition from another thread can never be
+ * lost to a resize.
+ */
 class Environment {
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
     final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    private final Object[] slots;
+    private volatile Binding[][] pages;
 
     Environment() {
         enclosing = null;
+        slots = null;
+        pages = new Binding[0][];
+    }
+
+    Environment(Environment enclosing, int size) {
+        this(enclosing, new Object[size]);
     }
 
-    Environment(Environment enclosing) {
+    Environment(Environment enclosing, Object[] slots) {
         this.enclosing = enclosing;
+        this.slots = slots;
+        this.pages = null;
     }
 
     Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
-        }
+        return binding(name).value;
+    }
 
-        if (enclosing != null) return enclosing.get(name);
+    /** Returns the cell of a defined global. */
+    Binding binding(Token name) {
+        Binding[] page = page(name.symbol);
+        if (page != null) {
+            Binding binding = page[name.symbol & (PAGE_SIZE - 1)];
+            if (binding != null) return binding;
+        }
 
         throw new RuntimeError(name,
                 "Undefined variable '" + name.lexeme + "'.");
     }
 
+    Object getAt(int depth, int slot) {
+        return ancestor(depth).slots[slot];
+    }
+
     void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
-        }
+        binding(name).value = value;
+    }
 
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
-        }
+    void assignAt(int depth, int slot, Object value) {
+        ancestor(depth).slots[slot] = value;
+    }
 
-        throw new RuntimeError(name,
-                "Undefined variable '" + name.lexeme + "'.");
+    void define(Token name, Object value) {
+        defineGlobal(name.symbol, value);
     }
 
     void define(String name, Object value) {
-        values.put(name, value);
+        defineGlobal(SymbolTable.GLOBAL.intern(name), value);
+    }
+
+    void define(int slot, Object value) {
+        slots[slot] = value;
+    }
+
+    private void defineGlobal(int symbol, Object value) {
+        Binding[] page = page(symbol);
+        if (page == null) page = addPage(symbol >>> PAGE_BITS);
+
+        int index = symbol & (PAGE_SIZE - 1);
+        Binding binding = page[index];
+        if (binding != null) {
+            // Update in place so cached references see the new value.
+            binding.value = value;
+        } else {
+            page[index] = new Binding(this, value);
+        }
+    }
+
+    private Binding[] page(int symbol) {
+        Binding[][] pages = this.pages;
+        int index = symbol >>> PAGE_BITS;
+        return index < pages.length ? pages[index] : null;
+    }
+
+    private synchronized Binding[] addPage(int index) {
+        // Another thread may have added it first.
+        if (index < pages.length && pages[index] != null) return pages[index];
+
+        Binding[] page = new Binding[PAGE_SIZE];
+
+        // Publish a new directory so readers never see a stale one.
+        Binding[][] copy = Arrays.copyOf(pages, Math.max(pages.length, index + 1));
+        copy[index] = page;
+        pages = copy;
+        return page;
+    }
+
+    private Environment ancestor(int depth) {
+        Environment environment = this;
+        for (int i = 0; i < depth; i++) {
+            environment = environment.enclosing;
+        }
+
+        return environment;
     }
 }
@@ -0,0 +1,42 @@
+package com.example.lox.jlox;
+
+/**
+ * Passes the errors of one compilation or run on to an {@link ErrorSink}
+ * and remembers whether there were any, so the stages after it know
+ * whether to go on.
+ */
+final class ErrorReporter {
+    private final ErrorSink sink;
+    boolean hadError = false;
+    boolean hadRuntimeError = false;
+
+    ErrorReporter(ErrorSink sink) {
+        this.sink = sink;
+    }
+
+    void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    void error(Token token, String message) {
+        if (token.type == TokenType.EOF) {
+            report(token.line, "at end", message);
+        } else {
+            report(token.line, "at '" + token.lexeme + "'", message);
+        }
+    }
+
+    void runtimeError(RuntimeError error) {
+        runtimeError(error.token.line, error.getMessage());
+    }
+
+    void runtimeError(int line, String message) {
+        sink.runtimeError(line, message);
+        hadRuntimeError = true;
+    }
+
+    private void report(int line, String where, String message) {
+        sink.compileError(line, where, message);
+        hadError = true;
+    }
+}
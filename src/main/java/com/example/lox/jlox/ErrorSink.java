@@ -0,0 +1,36 @@
+package com.example.lox.jlox;
+
+import java.io.PrintStream;
+
+/**
+ * Receives the errors from compiling or running one script. Each
+ * compilation and each run can have its own sink, so scripts running side
+ * by side never mix up their diagnostics.
+ */
+public interface ErrorSink {
+    /**
+     * Reports a scan, parse or resolution error. {@code where} is either
+     * empty or names the token the error was found at, such as
+     * {@code at 'x'} or {@code at end}.
+     */
+    void compileError(int line, String where, String message);
+
+    /** Reports the error that stopped a running script. */
+    void runtimeError(int line, String message);
+
+    /** Returns a sink that prints errors the way the jlox command does. */
+    static ErrorSink printingTo(PrintStream err) {
+        return new ErrorSink() {
+            @Override
+            public void compileError(int line, String where, String message) {
+                String at = where.isEmpty() ? "" : " " + where;
+                err.println("[line " + line + "] Error" + at + ": " + message);
+            }
+
+            @Override
+            public void runtimeError(int line, String message) {
+                err.println(message + "\n[line " + line + "]");
+            }
+        };
+    }
+}
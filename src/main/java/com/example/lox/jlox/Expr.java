@@ -26,6 +26,9 @@ abstract class Expr {
     static class Assign extends Expr {
         final Token name;
         final Expr value;
+        int depth = -1;
+        int slot;
+        Binding binding;
 
         Assign(Token name, Expr value) {
             this.name = name;
@@ -42,6 +45,9 @@ abstract class Expr {
         final Expr left;
         final Token operator;
         final Expr right;
+        boolean numeric;
+        boolean numericOperands;
+        BinaryNode node = BinaryNode.UNINITIALIZED;
 
         Binary(Expr left, Token operator, Expr right) {
             this.left = left;
@@ -59,6 +65,7 @@ abstract class Expr {
         final Expr callee;
         final Token paren;
         final List<Expr> arguments;
+        CallNode node = CallNode.UNINITIALIZED;
 
         Call(Expr callee, Token paren, List<Expr> arguments) {
             this.callee = callee;
@@ -132,6 +139,9 @@ abstract class Expr {
 
     static class Variable extends Expr {
         final Token name;
+        int depth = -1;
+        int slot;
+        Binding binding;
 
         Variable(Token name) {
             this.name = name;
@@ -0,0 +1,45 @@
+package com.example.lox.jlox;
+
+import java.util.Arrays;
+
+/**
+ * Spare frames for calls to Lox functions, kept by size so a call can
+ * reuse the array an earlier call was done with instead of allocating one.
+ * <p>
+ * A frame is only given back once nothing can refer to it any more, which
+ * is when the function that used it has returned and declares no
+ * functions that could have captured it. Each interpreter has its own
+ * pool, so it needs no locking.
+ */
+final class FramePool {
+    // Larger frames are rare enough to leave to the allocator.
+    private static final int MAX_FRAME_SIZE = 32;
+    // Enough for the recursion in most scripts, per size.
+    private static final int MAX_SPARE = 64;
+
+    private final Object[][][] spare = new Object[MAX_FRAME_SIZE + 1][][];
+    private final int[] counts = new int[MAX_FRAME_SIZE + 1];
+
+    /** Returns an empty frame of the given size. */
+    Object[] acquire(int size) {
+        if (size <= MAX_FRAME_SIZE && counts[size] > 0) {
+            return spare[size][--counts[size]];
+        }
+        return new Object[size];
+    }
+
+    /** How many spare frames of the given size the pool holds. */
+    int spare(int size) {
+        return size <= MAX_FRAME_SIZE ? counts[size] : 0;
+    }
+
+    /** Takes back a frame nothing will use again. */
+    void release(Object[] frame) {
+        int size = frame.length;
+        if (size > MAX_FRAME_SIZE || counts[size] == MAX_SPARE) return;
+
+        if (spare[size] == null) spare[size] = new Object[MAX_SPARE][];
+        Arrays.fill(frame, null);
+        spare[size][counts[size]++] = frame;
+    }
+}
@@ -1,30 +1,146 @@
 package com.example.lox.jlox;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Completion> {
+    private static final int METRICS_BATCH = 4096;
+
+    /** The call depth allowed unless another is given. */
+    static final int DEFAULT_MAX_CALL_DEPTH = 1024;
+    // Java stack a Lox call takes, with room for nested expressions.
+    private static final long STACK_BYTES_PER_CALL = 8 * 1024;
+    private static final long MAX_STACK_BYTES = 256L << 20;
+
+    final Environment globals;
+    private final ErrorReporter reporter;
+    final Output out;
+    final FramePool frames = new FramePool();
+    // Every task spawned during the run, by this interpreter or its forks.
+    final Queue<LoxTask> tasks;
+    private Environment environment;
+    private Object returnValue = null;
+    // Whether the last operand() was a number.
+    private boolean operandIsNumber = false;
+    // The call a Completion.TAIL_CALL is waiting to make.
+    LoxFunction tailCallee = null;
+    Object[] tailArguments = null;
+    // Null unless the script is being profiled.
+    Profiler.Stack profile = null;
+
+    // Counted here and added to Metrics.GLOBAL in batches.
+    private long statementCount = 0;
+    private long callCount = 0;
+    private long environmentCount = 0;
+    private int callDepth = 0;
+    private int peakCallDepth = 0;
+    int maxCallDepth = DEFAULT_MAX_CALL_DEPTH;
+
+    Interpreter(ErrorReporter reporter, PrintStream out) {
+        this(reporter, new Output(out, Output.DEFAULT_BUFFER_SIZE, false));
+    }
 
-class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-    final Environment globals = new Environment();
-    private Environment environment = globals;
-
-    Interpreter() {
-        globals.define("clock", new LoxCallable() {
-            @Override
-            public int arity() {
-                return 0;
+    Interpreter(ErrorReporter reporter, Output out) {
+        this.globals = new Environment();
+        this.reporter = reporter;
+        this.out = out;
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.environment = globals;
+
+        globals.define("clock", new LoxNative(0, (interpreter, arguments) ->
+                (double) System.currentTimeMillis() / 1000.0));
+
+        globals.define("spawn", new LoxNative(1, (interpreter, arguments) -> {
+            if (!(arguments[0] instanceof LoxCallable) ||
+                ((LoxCallable) arguments[0]).arity() != 0) {
+                throw new LoxNative.Failure(
+                        "Can only spawn a function that takes no arguments.");
             }
-
-            @Override
-            public Object call(Interpreter interpreter,
-                               List<Object> arguments) {
-                return (double) System.currentTimeMillis() / 1000.0;
+            interpreter.out.flush();
+            return new LoxTask(interpreter, (LoxCallable) arguments[0]);
+        }));
+        globals.define("join", new LoxNative(1, (interpreter, arguments) -> {
+            if (!(arguments[0] instanceof LoxTask)) {
+                throw new LoxNative.Failure("Can only join a task.");
             }
-
-            @Override
-            public String toString() {
-                return "<native fn>";
+            return ((LoxTask) arguments[0]).join();
+        }));
+        globals.define("channel", new LoxNative(1, (interpreter, arguments) -> {
+            Object capacity = arguments[0];
+            if (!(capacity instanceof Double) || (double) capacity < 1 ||
+                (double) capacity != Math.floor((double) capacity)) {
+                throw new LoxNative.Failure(
+                        "Channel capacity must be a positive integer.");
             }
-        });
+            return new LoxChannel((int) Math.min((double) capacity,
+                    Integer.MAX_VALUE));
+        }));
+        globals.define("send", new LoxNative(2, (interpreter, arguments) -> {
+            LoxChannel channel = channel(arguments[0]);
+            interpreter.out.flush();
+            channel.send(arguments[1]);
+            return null;
+        }));
+        globals.define("receive", new LoxNative(1, (interpreter, arguments) ->
+                channel(arguments[0]).receive()));
+        globals.define("flush", new LoxNative(0, (interpreter, arguments) -> {
+            interpreter.out.flush();
+            return null;
+        }));
+
+        globals.define("list", new LoxNative(0, (interpreter, arguments) ->
+                new LoxList()));
+        globals.define("push", new LoxNative(2, (interpreter, arguments) -> {
+            list(arguments[0]).add(arguments[1]);
+            return null;
+        }));
+        globals.define("get", new LoxNative(2, (interpreter, arguments) -> {
+            LoxList list = list(arguments[0]);
+            return list.get(index(list, arguments[1]));
+        }));
+        globals.define("set", new LoxNative(3, (interpreter, arguments) -> {
+            LoxList list = list(arguments[0]);
+            list.set(index(list, arguments[1]), arguments[2]);
+            return null;
+        }));
+        globals.define("len", new LoxNative(1, (interpreter, arguments) ->
+                (double) list(arguments[0]).size()));
+
+        globals.define("map", new LoxNative(0, (interpreter, arguments) ->
+                new LoxMap()));
+        globals.define("put", new LoxNative(3, (interpreter, arguments) -> {
+            map(arguments[0]).put(key(arguments[1]), arguments[2]);
+            return null;
+        }));
+        globals.define("lookup", new LoxNative(2, (interpreter, arguments) ->
+                map(arguments[0]).get(key(arguments[1]))));
+        globals.define("has", new LoxNative(2, (interpreter, arguments) ->
+                map(arguments[0]).containsKey(key(arguments[1]))));
+        globals.define("remove", new LoxNative(2, (interpreter, arguments) ->
+                map(arguments[0]).remove(key(arguments[1]))));
+        globals.define("keys", new LoxNative(1, (interpreter, arguments) ->
+                map(arguments[0]).keys()));
+    }
+
+    /**
+     * Creates an interpreter for a spawned task. It shares the globals,
+     * output and error reporting, but has its own place in the program.
+     */
+    private Interpreter(Interpreter parent) {
+        this.globals = parent.globals;
+        this.reporter = parent.reporter;
+        this.out = parent.out.fork();
+        this.tasks = parent.tasks;
+        this.environment = globals;
+        this.profile = parent.profile == null ? null : parent.profile.fork();
+        this.maxCallDepth = parent.maxCallDepth;
+    }
+
+    Interpreter fork() {
+        return new Interpreter(this);
     }
 
     void interpret(List<Stmt> statements) {
@@ -33,55 +149,170 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 execute(statement);
             }
         } catch (RuntimeError error) {
-            Lox.runtimeError(error);
+            // Keep what was printed ahead of the error message.
+            out.flush();
+            reporter.runtimeError(error);
+        } finally {
+            out.flush();
+            awaitTasks();
+            flushMetrics();
+        }
+    }
+
+    /**
+     * Waits for every task the run spawned, including tasks spawned by
+     * tasks, then reports the failures nobody joined. Only once all of them
+     * have finished is it known which were joined.
+     */
+    private void awaitTasks() {
+        List<LoxTask> finished = new ArrayList<>();
+        try {
+            for (LoxTask task; (task = tasks.poll()) != null; ) {
+                task.await();
+                finished.add(task);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        for (LoxTask task : finished) {
+            RuntimeError error = task.unjoinedFailure();
+            if (error != null) reporter.runtimeError(error);
+        }
+    }
+
+    /** Adds what this interpreter has counted so far to the metrics. */
+    void flushMetrics() {
+        Metrics metrics = Metrics.GLOBAL;
+        metrics.statements.add(statementCount);
+        metrics.calls.add(callCount);
+        metrics.environments.add(environmentCount);
+        metrics.peakCallDepth.accumulate(peakCallDepth);
+        statementCount = 0;
+        callCount = 0;
+        environmentCount = 0;
+    }
+
+    void enterCall() {
+        callCount++;
+        environmentCount++;
+        if (++callDepth > peakCallDepth) peakCallDepth = callDepth;
+    }
+
+    /** Counts a tail call, which reuses its caller's place in the stack. */
+    void enterTailCall() {
+        callCount++;
+        environmentCount++;
+    }
+
+    void exitCall() {
+        callDepth--;
+    }
+
+    /**
+     * Calls a Lox function whose arity is known to match in a frame from
+     * the pool. The function gives the frame back when it returns; if the
+     * call is refused, it goes back here.
+     */
+    Object callFunction(Expr.Call expr, LoxFunction function) {
+        Object[] arguments =
+                evaluateArguments(expr, frames.acquire(function.frameSize()));
+        if (callDepth >= maxCallDepth) {
+            frames.release(arguments);
+            throw new RuntimeError(expr.paren, "Stack overflow.");
+        }
+
+        try {
+            return function.call(this, arguments);
+        } catch (StackOverflowError error) {
+            // The thread's stack was too small for the depth allowed.
+            throw new RuntimeError(expr.paren, "Stack overflow.");
+        }
+    }
+
+    /**
+     * Fails a call that would nest deeper than allowed. Lox calls recurse
+     * on the Java stack, so the limit is what keeps a runaway recursion
+     * from ending in a StackOverflowError.
+     */
+    void checkCallDepth(Token paren) {
+        if (callDepth >= maxCallDepth) {
+            throw new RuntimeError(paren, "Stack overflow.");
         }
     }
 
+    /**
+     * The Java stack a thread needs to run calls nested to the given
+     * depth. Threads that interpret Lox are created with this size, since
+     * the JVM's default only fits a few hundred calls.
+     */
+    static long stackSize(int maxCallDepth) {
+        return Math.min(maxCallDepth * STACK_BYTES_PER_CALL, MAX_STACK_BYTES);
+    }
+
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
 
-        environment.assign(expr.name, value);
+        if (expr.depth < 0) {
+            expr.binding = global(expr.name, expr.binding);
+            expr.binding.value = value;
+        } else {
+            environment.assignAt(expr.depth, expr.slot, value);
+        }
         return value;
     }
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
+        if (expr.numeric) return Numbers.box(evaluateDouble(expr));
+        if (expr.numericOperands) return compareDoubles(expr);
+
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
 
-        switch (expr.operator.type) {
+        return expr.node.execute(expr, left, right);
+    }
+
+    /**
+     * Applies a binary operator to evaluated operands with full type
+     * checking. This is what a {@link BinaryNode} falls back to once its
+     * specialization no longer matches.
+     */
+    static Object binary(Token operator, Object left, Object right) {
+        switch (operator.type) {
             case GREATER:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left > (double) right;
             case GREATER_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left >= (double) right;
             case LESS:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left < (double) right;
             case LESS_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left <= (double) right;
             case MINUS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left - (double) right;
+                checkNumberOperands(operator, left, right);
+                return Numbers.box((double) left - (double) right);
             case PLUS:
                 if (left instanceof Double && right instanceof Double) {
-                    return (double) left + (double) right;
+                    return Numbers.box((double) left + (double) right);
                 }
 
-                if (left instanceof String && right instanceof String) {
-                    return left + (String) right;
+                if (left instanceof CharSequence && right instanceof CharSequence) {
+                    return concatenate((CharSequence) left, (CharSequence) right);
                 }
 
-                throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+                throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
             case SLASH:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left / (double) right;
+                checkNumberOperands(operator, left, right);
+                return Numbers.box((double) left / (double) right);
             case STAR:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left * (double) right;
+                checkNumberOperands(operator, left, right);
+                return Numbers.box((double) left * (double) right);
             case BANG_EQUAL:
                 return !isEqual(left, right);
             case EQUAL_EQUAL:
@@ -92,28 +323,148 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return null;
     }
 
+    /**
+     * Evaluates an arithmetic node the resolver marked as numeric without
+     * boxing, recursing directly into operands that are numeric too. Both
+     * operands are still evaluated before either one is checked.
+     */
+    private double evaluateDouble(Expr.Binary expr) {
+        double left = operand(expr.left);
+        boolean numbers = operandIsNumber;
+        double right = operand(expr.right);
+        numbers &= operandIsNumber;
+
+        switch (expr.operator.type) {
+            case MINUS:
+                if (!numbers) break;
+                return left - right;
+            case PLUS:
+                if (!numbers) {
+                    throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+                }
+                return left + right;
+            case SLASH:
+                if (!numbers) break;
+                return left / right;
+            case STAR:
+                if (!numbers) break;
+                return left * right;
+        }
+
+        throw new RuntimeError(expr.operator, "Operands must be numbers.");
+    }
+
+    /**
+     * Evaluates an operand of an unboxed node, recursing directly into a
+     * numeric one. Afterwards {@link #operandIsNumber} says whether it was
+     * a number; if not, the result is 0 and the caller reports the error.
+     */
+    private double operand(Expr operand) {
+        if (isNumeric(operand)) {
+            double value = evaluateDouble((Expr.Binary) operand);
+            operandIsNumber = true;
+            return value;
+        }
+
+        Object value = evaluate(operand);
+        operandIsNumber = value instanceof Double;
+        return operandIsNumber ? (double) value : 0;
+    }
+
+    /**
+     * Evaluates a comparison the resolver found an arithmetic operand in,
+     * taking that operand unboxed. Equality still treats numbers the way
+     * {@link Double#equals} does, and a number never equals anything else.
+     */
+    private boolean compareDoubles(Expr.Binary expr) {
+        double left = operand(expr.left);
+        boolean numbers = operandIsNumber;
+        double right = operand(expr.right);
+        numbers &= operandIsNumber;
+
+        switch (expr.operator.type) {
+            case EQUAL_EQUAL:
+                return numbers && Double.doubleToLongBits(left) ==
+                        Double.doubleToLongBits(right);
+            case BANG_EQUAL:
+                return !numbers || Double.doubleToLongBits(left) !=
+                        Double.doubleToLongBits(right);
+            case GREATER:
+                if (!numbers) break;
+                return left > right;
+            case GREATER_EQUAL:
+                if (!numbers) break;
+                return left >= right;
+            case LESS:
+                if (!numbers) break;
+                return left < right;
+            case LESS_EQUAL:
+                if (!numbers) break;
+                return left <= right;
+        }
+
+        throw new RuntimeError(expr.operator, "Operands must be numbers.");
+    }
+
     @Override
     public Object visitCallExpr(Expr.Call expr) {
         Object callee = evaluate(expr.callee);
+        return expr.node.execute(this, expr, callee);
+    }
+
+    /**
+     * Evaluates a call's arguments straight into the array the callee will
+     * use as its frame, so no intermediate list is built.
+     */
+    Object[] evaluateArguments(Expr.Call expr, Object[] frame) {
+        List<Expr> argumentExprs = expr.arguments;
+        for (int i = 0; i < argumentExprs.size(); i++) {
+            frame[i] = evaluate(argumentExprs.get(i));
+        }
+
+        return frame;
+    }
+
+    /**
+     * Evaluates the arguments and calls an evaluated callee with full
+     * checking. This is what a {@link CallNode} falls back to once the
+     * call site is not monomorphic.
+     */
+    Object call(Expr.Call expr, Object callee) {
+        if (callee instanceof LoxFunction &&
+            ((LoxFunction) callee).arity() == expr.arguments.size()) {
+            return callFunction(expr, (LoxFunction) callee);
+        }
 
-        List<Object> arguments = new ArrayList<>();
-        for (Expr argument : expr.arguments) {
-            arguments.add(evaluate(argument));
+        int frameSize = 0;
+        if (callee instanceof LoxCallable) {
+            frameSize = ((LoxCallable) callee).frameSize();
         }
 
+        Object[] arguments = evaluateArguments(expr,
+                new Object[Math.max(frameSize, expr.arguments.size())]);
+
         if (!(callee instanceof LoxCallable)) {
             throw new RuntimeError(expr.paren, "Can only call functions and classes.");
         }
 
         LoxCallable function = (LoxCallable) callee;
 
-        if (arguments.size() != function.arity()) {
+        if (expr.arguments.size() != function.arity()) {
             throw new RuntimeError(expr.paren,
                     "Expected %d arguments but got %s."
-                            .formatted(function.arity(), arguments.size()));
+                            .formatted(function.arity(), expr.arguments.size()));
         }
 
-        return function.call(this, arguments);
+        checkCallDepth(expr.paren);
+        try {
+            return function.call(this, arguments);
+        } catch (LoxNative.Failure failure) {
+            throw new RuntimeError(expr.paren, failure.getMessage());
+        } catch (StackOverflowError error) {
+            // The thread's stack was too small for the depth allowed.
+            throw new RuntimeError(expr.paren, "Stack overflow.");
+        }
     }
 
     @Override
@@ -146,7 +497,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         switch (expr.operator.type) {
             case MINUS:
                 checkNumberOperand(expr.operator, right);
-                return -(double) right;
+                return Numbers.box(-(double) right);
             case BANG:
                 return !isTruthy(right);
         }
@@ -157,7 +508,18 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return environment.get(expr.name);
+        if (expr.depth < 0) {
+            expr.binding = global(expr.name, expr.binding);
+            return expr.binding.value;
+        }
+        return environment.getAt(expr.depth, expr.slot);
+    }
+
+    // A compiled program can be run by several interpreters, so a cached
+    // cell is only used if it belongs to this one's globals.
+    private Binding global(Token name, Binding cached) {
+        if (cached != null && cached.owner == globals) return cached;
+        return globals.binding(name);
     }
 
     private void checkNumberOperand(Token operator, Object operand) {
@@ -165,39 +527,76 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         throw new RuntimeError(operator, "Operand must be a number.");
     }
 
-    private void checkNumberOperands(Token operator,
+    private static void checkNumberOperands(Token operator,
                                      Object left, Object right) {
         if (left instanceof Double && right instanceof Double) return;
 
         throw new RuntimeError(operator, "Operands must be numbers.");
     }
 
-    private boolean isTruthy(Object object) {
+    private static boolean isNumeric(Expr expr) {
+        return expr instanceof Expr.Binary && ((Expr.Binary) expr).numeric;
+    }
+
+    static CharSequence concatenate(CharSequence left, CharSequence right) {
+        Metrics.GLOBAL.concatenations.increment();
+        return LoxString.concat(left, right);
+    }
+
+    private static LoxChannel channel(Object object) {
+        if (object instanceof LoxChannel) return (LoxChannel) object;
+        throw new LoxNative.Failure("Can only send to and receive from a channel.");
+    }
+
+    private static LoxList list(Object object) {
+        if (object instanceof LoxList) return (LoxList) object;
+        throw new LoxNative.Failure("Operand must be a list.");
+    }
+
+    private static LoxMap map(Object object) {
+        if (object instanceof LoxMap) return (LoxMap) object;
+        throw new LoxNative.Failure("Operand must be a map.");
+    }
+
+    private static Object key(Object key) {
+        if (key instanceof Double) return key;
+        // A rope is flattened so the map only ever compares Strings.
+        if (key instanceof CharSequence) return key.toString();
+        throw new LoxNative.Failure("Map key must be a string or number.");
+    }
+
+    private static int index(LoxList list, Object index) {
+        if (!(index instanceof Double) ||
+            (double) index != Math.floor((double) index)) {
+            throw new LoxNative.Failure("List index must be an integer.");
+        }
+        if ((double) index < 0 || (double) index >= list.size()) {
+            throw new LoxNative.Failure("List index out of range.");
+        }
+        return (int) (double) index;
+    }
+
+    static boolean isTruthy(Object object) {
         if (object == null) return false;
         if (object instanceof Boolean) return (boolean) object;
         return true;
     }
 
-    private boolean isEqual(Object a, Object b) {
+    private static boolean isEqual(Object a, Object b) {
         // nil is only equal to nil.
         if (a == null && b == null) return true;
         if (a == null) return false;
 
+        if (a instanceof CharSequence && b instanceof CharSequence) {
+            return LoxString.contentEquals((CharSequence) a, (CharSequence) b);
+        }
+
         return a.equals(b);
     }
 
+    // Numbers are printed by Output.append(double).
     private String stringify(Object object) {
         if (object == null) return "nil";
-
-        // Hack. Work around Java adding ".0" to integer-valued doubles.
-        if (object instanceof Double) {
-            String text = object.toString();
-            if (text.endsWith(".0")) {
-                text = text.substring(0, text.length() - 2);
-            }
-            return text;
-        }
-
         return object.toString();
     }
 
@@ -205,83 +604,137 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return expr.accept(this);
     }
 
-    private void execute(Stmt stmt) {
-        stmt.accept(this);
+    private Completion execute(Stmt stmt) {
+        if (++statementCount == METRICS_BATCH) flushMetrics();
+        if (profile != null) profile.count(stmt);
+        return stmt.accept(this);
     }
 
-    void executeBlock(List<Stmt> statements, Environment environment) {
+    Completion executeBlock(List<Stmt> statements, Environment environment) {
         Environment previous = this.environment;
         try {
             this.environment = environment;
 
             for (Stmt statement : statements) {
-                execute(statement);
+                Completion completion = execute(statement);
+                if (completion != Completion.NORMAL) return completion;
             }
+
+            return Completion.NORMAL;
         } finally {
             this.environment = previous;
         }
     }
 
+    /**
+     * Hands over the value of the return statement that just completed
+     * with {@link Completion#RETURN}.
+     */
+    Object takeReturnValue() {
+        Object value = returnValue;
+        returnValue = null;
+        return value;
+    }
+
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
-        return null;
+    public Completion visitBlockStmt(Stmt.Block stmt) {
+        environmentCount++;
+        return executeBlock(stmt.statements,
+                new Environment(environment, stmt.frameSize));
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
+    public Completion visitExpressionStmt(Stmt.Expression stmt) {
         evaluate(stmt.expression);
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) {
+    public Completion visitFunctionStmt(Stmt.Function stmt) {
         LoxFunction function = new LoxFunction(stmt, environment);
-        environment.define(stmt.name.lexeme, function);
-        return null;
+        if (stmt.slot < 0) {
+            globals.define(stmt.name, function);
+        } else {
+            environment.define(stmt.slot, function);
+        }
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt) {
+    public Completion visitIfStmt(Stmt.If stmt) {
         if (isTruthy(evaluate(stmt.condition))) {
-            execute(stmt.thenBranch);
+            return execute(stmt.thenBranch);
         } else if (stmt.elseBranch != null) {
-            execute(stmt.elseBranch);
+            return execute(stmt.elseBranch);
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt) {
+    public Completion visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
-        return null;
+        if (value instanceof Double) {
+            out.append((double) value);
+        } else {
+            out.append(stringify(value));
+        }
+        out.newline();
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
+    public Completion visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.tailCall) return tailCall((Expr.Call) stmt.value);
+
         Object value = null;
         if (stmt.value != null) value = evaluate(stmt.value);
 
-        throw new Return(value);
+        returnValue = value;
+        return Completion.RETURN;
+    }
+
+    /**
+     * Evaluates the callee and arguments of a call in tail position, and
+     * leaves a call to a Lox function to the function that is returning,
+     * which makes it without adding to the Java stack. Anything else is
+     * called as usual.
+     */
+    private Completion tailCall(Expr.Call expr) {
+        Object callee = evaluate(expr.callee);
+        if (callee instanceof LoxFunction &&
+            ((LoxFunction) callee).arity() == expr.arguments.size()) {
+            LoxFunction function = (LoxFunction) callee;
+            tailArguments = evaluateArguments(expr,
+                    frames.acquire(function.frameSize()));
+            tailCallee = function;
+            return Completion.TAIL_CALL;
+        }
+
+        returnValue = expr.node.execute(this, expr, callee);
+        return Completion.RETURN;
     }
 
     @Override
-    public Void visitVarStmt(Stmt.Var stmt) {
+    public Completion visitVarStmt(Stmt.Var stmt) {
         Object value = null;
         if (stmt.initializer != null) {
             value = evaluate(stmt.initializer);
         }
 
-        environment.define(stmt.name.lexeme, value);
-        return null;
+        if (stmt.slot < 0) {
+            globals.define(stmt.name, value);
+        } else {
+            environment.define(stmt.slot, value);
+        }
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
+    public Completion visitWhileStmt(Stmt.While stmt) {
         while (isTruthy(evaluate(stmt.condition))) {
-            execute(stmt.body);
+            Completion completion = execute(stmt.body);
+            if (completion != Completion.NORMAL) return completion;
         }
-        return null;
+        return Completion.NORMAL;
     }
 }
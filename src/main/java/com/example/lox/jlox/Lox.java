@@ -1,39 +1,214 @@
 package com.example.lox.jlox;
 
+import com.example.lox.jlox.vm.CompiledFunction;
+import com.example.lox.jlox.vm.VM;
+import com.example.lox.jlox.vm.VmError;
+
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.charset.Charset;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Java Lox Interpreter
  */
 public class Lox {
-    private static final Interpreter interpreter = new Interpreter();
-    static boolean hadError = false;
-    static boolean hadRuntimeError = false;
-
-    public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
-        } else {
+    private static final ErrorReporter reporter =
+            new ErrorReporter(ErrorSink.printingTo(System.err));
+    private static Interpreter interpreter = null;
+    private static VM vm = null;
+    private static boolean optimize = true;
+    private static ScriptCache cache = null;
+    private static Path profile = null;
+
+    public static void main(String[] args)
+            throws IOException, InterruptedException {
+        List<Path> scripts = new ArrayList<>();
+        boolean useVm = false;
+        int maxDepth = Interpreter.DEFAULT_MAX_CALL_DEPTH;
+        for (String arg : args) {
+            if (arg.equals("--vm")) {
+                useVm = true;
+            } else if (arg.equals("--no-optimize")) {
+                optimize = false;
+            } else if (arg.startsWith("--cache-dir=")) {
+                String directory = arg.substring("--cache-dir=".length());
+                cache = new ScriptCache(Paths.get(directory));
+            } else if (arg.equals("--metrics")) {
+                Metrics.GLOBAL.publish();
+                Runtime.getRuntime().addShutdownHook(new Thread(() ->
+                        Metrics.GLOBAL.print(System.err)));
+            } else if (arg.startsWith("--profile=")) {
+                profile = Paths.get(arg.substring("--profile=".length()));
+            } else if (arg.startsWith("--max-depth=")) {
+                try {
+                    maxDepth = Integer.parseInt(
+                            arg.substring("--max-depth=".length()));
+                } catch (NumberFormatException e) {
+                    maxDepth = 0;
+                }
+                if (maxDepth < 1) usage();
+            } else if (arg.startsWith("--")) {
+                usage();
+            } else {
+                scripts.add(Paths.get(arg));
+            }
+        }
+
+        if (useVm) vm = new VM(maxDepth);
+
+        // Buffer the output of scripts, but show each line of the REPL's
+        // output as soon as it is printed.
+        interpreter = new Interpreter(reporter, new Output(System.out,
+                Output.DEFAULT_BUFFER_SIZE, scripts.isEmpty()));
+        interpreter.maxCallDepth = maxDepth;
+
+        if (profile != null) {
+            if (vm != null) {
+                System.err.println("Profiling is not supported with --vm.");
+                System.exit(64);
+            }
+            startProfiling();
+        }
+
+        // Lox calls recurse on the Java stack in the tree-walker, so run
+        // on a thread with room for as many as are allowed.
+        FutureTask<Void> run = new FutureTask<>(() -> {
+            run(scripts);
+            return null;
+        });
+        new Thread(null, run, "lox", Interpreter.stackSize(maxDepth)).start();
+        try {
+            run.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage: jlox [--vm] [--no-optimize] "
+                + "[--cache-dir=<dir>] [--metrics] [--profile=<file>] "
+                + "[--max-depth=<calls>] [script | directory ...]");
+        System.exit(64);
+    }
+
+    private static void run(List<Path> scripts) throws IOException {
+        if (scripts.isEmpty()) {
             runPrompt();
+        } else if (scripts.size() == 1 && !Files.isDirectory(scripts.get(0))) {
+            runFile(scripts.get(0));
+        } else {
+            runFiles(listScripts(scripts));
         }
     }
 
-    private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+    /**
+     * Profiles the interpreter until the process exits, however it exits,
+     * and writes the results then.
+     */
+    private static void startProfiling() {
+        Profiler profiler = new Profiler();
+        interpreter.profile = profiler.scriptStack();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                profiler.finish(profile, System.err);
+            } catch (IOException e) {
+                System.err.println("Could not write profile: " + e.getMessage());
+            }
+        }));
+    }
+
+    private static void runFile(Path path) throws IOException {
+        List<Stmt> statements = check(parse(path, reporter), reporter);
+        if (statements != null) execute(statements);
 
         // Indicate an error in the exit code.
-        if (hadError) System.exit(65);
-        if (hadRuntimeError) System.exit(70);
+        if (reporter.hadError) System.exit(65);
+        if (reporter.hadRuntimeError) System.exit(70);
+    }
+
+    /**
+     * Runs several scripts one after another, sharing one global scope.
+     * They are all scanned, parsed and resolved up front, in parallel, and
+     * nothing runs unless every one of them is free of errors.
+     */
+    private static void runFiles(List<Path> paths) throws IOException {
+        List<ByteArrayOutputStream> errors = new ArrayList<>();
+        for (int i = 0; i < paths.size(); i++) {
+            errors.add(new ByteArrayOutputStream());
+        }
+
+        List<List<Stmt>> programs = IntStream.range(0, paths.size())
+                .parallel()
+                .mapToObj(i -> checkFile(paths.get(i), errors.get(i)))
+                .collect(Collectors.toList());
+
+        // Report in the order the files were given, not the order they
+        // happened to finish in.
+        for (int i = 0; i < paths.size(); i++) {
+            if (errors.get(i).size() == 0) continue;
+
+            System.err.println(paths.get(i) + ":");
+            errors.get(i).writeTo(System.err);
+        }
+        if (programs.contains(null)) System.exit(65);
+
+        for (List<Stmt> statements : programs) {
+            execute(statements);
+            if (reporter.hadRuntimeError) System.exit(70);
+        }
+    }
+
+    /** Expands directories into the .lx files directly inside them. */
+    private static List<Path> listScripts(List<Path> paths) throws IOException {
+        List<Path> scripts = new ArrayList<>();
+        for (Path path : paths) {
+            if (!Files.isDirectory(path)) {
+                scripts.add(path);
+                continue;
+            }
+
+            try (Stream<Path> files = Files.list(path)) {
+                files.filter(file -> file.toString().endsWith(".lx"))
+                        .filter(Files::isRegularFile)
+                        .sorted()
+                        .forEach(scripts::add);
+            }
+        }
+
+        return scripts;
+    }
+
+    private static List<Stmt> checkFile(Path path, OutputStream errors) {
+        ErrorReporter reporter = new ErrorReporter(ErrorSink.printingTo(
+                new PrintStream(errors, true, StandardCharsets.UTF_8)));
+        try {
+            return check(parse(path, reporter), reporter);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     private static void runPrompt() throws IOException {
@@ -44,45 +219,85 @@ public class Lox {
             System.out.print("> ");
             String line = reader.readLine();
             if (line == null) break;
-            run(line);
-            hadError = false;
+
+            Parser parser = new Parser(new Scanner(line, reporter), reporter);
+            List<Stmt> statements = check(parser.parse(), reporter);
+            if (statements != null) execute(statements);
+            reporter.hadError = false;
         }
     }
 
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
+    private static List<Stmt> parse(Path path, ErrorReporter reporter)
+            throws IOException {
+        // Map the script instead of reading it so the scanner can stream
+        // through it without a heap copy of the whole source.
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            MappedByteBuffer source =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return parse(source, reporter);
+        }
+    }
 
-        Parser parser = new Parser(tokens);
-        List<Stmt> statements = parser.parse();
+    private static List<Stmt> parse(ByteBuffer source, ErrorReporter reporter) {
+        if (cache == null) {
+            return new Parser(new Scanner(source, reporter), reporter).parse();
+        }
 
-        // Stop if there was a syntax error.
-        if (hadError) return;
+        String key = ScriptCache.key(source);
+        List<Stmt> statements = cache.load(key);
+        if (statements == null) {
+            statements =
+                    new Parser(new Scanner(source, reporter), reporter).parse();
 
-        interpreter.interpret(statements);
-    }
+            // Only a tree without syntax errors is worth keeping.
+            if (!reporter.hadError) cache.store(key, statements);
+        }
 
-    static void error(int line, String message) {
-        report(line, "", message);
+        return statements;
     }
 
-    private static void report(int line, String where, String message) {
-        System.err.println(
-                "[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
+    /**
+     * Resolves and optimizes a parsed script. Returns null if the script
+     * has errors.
+     */
+    private static List<Stmt> check(List<Stmt> statements,
+                                    ErrorReporter reporter) {
+        // Stop if there was a syntax error.
+        if (reporter.hadError) return null;
+
+        Resolver resolver = new Resolver(reporter);
+        resolver.resolve(statements);
+
+        // Stop if there was a resolution error.
+        if (reporter.hadError) return null;
+
+        if (optimize) {
+            statements = new Optimizer().optimize(statements);
+        }
+
+        return statements;
     }
 
-    static void error(Token token, String message) {
-        if (token.type == TokenType.EOF) {
-            report(token.line, " at end", message);
+    private static void execute(List<Stmt> statements) {
+        if (vm != null) {
+            runCompiled(statements);
         } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
+            interpreter.interpret(statements);
         }
     }
 
-    static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() +
-                           "\n[line " + error.token.line + "]");
-        hadRuntimeError = true;
+    private static void runCompiled(List<Stmt> statements) {
+        Compiler compiler = new Compiler(reporter);
+        CompiledFunction script = compiler.compile(statements);
+
+        // Stop if the program does not fit the bytecode format.
+        if (reporter.hadError) return;
+
+        try {
+            vm.interpret(script);
+        } catch (VmError error) {
+            reporter.runtimeError(error.line, error.getMessage());
+        }
     }
 }
@@ -1,9 +1,16 @@
 package com.example.lox.jlox;
 
-import java.util.List;
-
 interface LoxCallable {
     int arity();
 
-    Object call(Interpreter interpreter, List<Object> arguments);
+    /**
+     * Number of slots the caller should allocate for the argument array.
+     * Arguments fill the first {@link #arity()} slots; a Lox function keeps
+     * its locals in the rest, so the array becomes its frame as-is.
+     */
+    default int frameSize() {
+        return arity();
+    }
+
+    Object call(Interpreter interpreter, Object[] arguments);
 }
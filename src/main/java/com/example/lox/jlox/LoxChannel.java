@@ -0,0 +1,44 @@
+package com.example.lox.jlox;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded queue for passing values between tasks, as returned by the
+ * {@code channel()} native. Sending to a full channel or receiving from an
+ * empty one blocks until another task makes room or sends something.
+ */
+final class LoxChannel {
+    // A BlockingQueue cannot hold null, so nil travels as this instead.
+    private static final Object NIL = new Object();
+
+    private final BlockingQueue<Object> queue;
+
+    LoxChannel(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    void send(Object value) {
+        try {
+            queue.put(value == null ? NIL : value);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LoxNative.Failure("Interrupted while sending.");
+        }
+    }
+
+    Object receive() {
+        try {
+            Object value = queue.take();
+            return value == NIL ? null : value;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LoxNative.Failure("Interrupted while receiving.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<channel>";
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.lox.jlox;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs Lox scripts inside another Java program.
+ * <p>
+ * A script is compiled once into a {@link LoxProgram}. Every run of a
+ * program gets an interpreter of its own, with its own globals, output and
+ * {@link ErrorSink}, so any number of runs can go on side by side without
+ * seeing each other. {@link #submit} queues a run on the engine's pool of
+ * threads; {@link #run} runs one on the calling thread.
+ */
+public final class LoxEngine implements AutoCloseable {
+    private final ExecutorService executor;
+
+    /** Creates an engine with one thread per available processor. */
+    public LoxEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public LoxEngine(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(null, runnable,
+                    "lox-engine-" + count.incrementAndGet(),
+                    Interpreter.stackSize(Interpreter.DEFAULT_MAX_CALL_DEPTH));
+            // Do not keep the JVM alive for an engine nobody closed.
+            thread.setDaemon(true);
+            return thread;
+        });
+        Metrics.GLOBAL.publish();
+    }
+
+    /**
+     * Compiles a script, sending any errors to the sink. Returns null if
+     * the script has errors.
+     */
+    public LoxProgram compile(String source, ErrorSink errors) {
+        ErrorReporter reporter = new ErrorReporter(errors);
+
+        Parser parser = new Parser(new Scanner(source, reporter), reporter);
+        List<Stmt> statements = parser.parse();
+        if (reporter.hadError) return null;
+
+        new Resolver(reporter).resolve(statements);
+        if (reporter.hadError) return null;
+
+        return new LoxProgram(new Optimizer().optimize(statements));
+    }
+
+    /**
+     * Runs a program on the calling thread in a fresh interpreter, and
+     * waits for any tasks it spawned. Returns false if the run stopped with
+     * a runtime error or a task failed without being joined.
+     */
+    public boolean run(LoxProgram program, PrintStream out, ErrorSink errors) {
+        ErrorReporter reporter = new ErrorReporter(errors);
+        new Interpreter(reporter, out).interpret(program.statements);
+        return !reporter.hadRuntimeError;
+    }
+
+    /**
+     * Queues a run of a program on the engine's threads. The future
+     * completes with the result {@link #run} would have returned.
+     */
+    public CompletableFuture<Boolean> submit(LoxProgram program,
+                                             PrintStream out,
+                                             ErrorSink errors) {
+        return CompletableFuture.supplyAsync(
+                () -> run(program, out, errors), executor);
+    }
+
+    /**
+     * Lets queued runs finish, waiting for them, then stops the engine's
+     * threads. If the waiting thread is interrupted, runs still queued are
+     * cancelled instead.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,10 +1,10 @@
 package com.example.lox.jlox;
 
-import java.util.List;
+import java.util.Arrays;
 
 class LoxFunction implements LoxCallable {
     private final Environment closure;
-    private final Stmt.Function declaration;
+    final Stmt.Function declaration;
 
     LoxFunction(Stmt.Function declaration, Environment closure) {
         this.closure = closure;
@@ -17,19 +17,70 @@ class LoxFunction implements LoxCallable {
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
-        for (int i = 0; i < declaration.params.size(); i++) {
-            environment.define(declaration.params.get(i).lexeme,
-                    arguments.get(i));
+    public int frameSize() {
+        return declaration.frameSize;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        if (interpreter.profile != null) {
+            return profiledCall(interpreter, arguments);
+        }
+
+        return invoke(interpreter, arguments);
+    }
+
+    private Object invoke(Interpreter interpreter, Object[] arguments) {
+        interpreter.enterCall();
+        try {
+            LoxFunction function = this;
+            for (; ; ) {
+                // Parameters were resolved to the first slots, so the
+                // arguments are already bound. Only callers that did not
+                // size the array with frameSize() pay for a copy.
+                Stmt.Function declaration = function.declaration;
+                if (arguments.length < declaration.frameSize) {
+                    arguments = Arrays.copyOf(arguments, declaration.frameSize);
+                }
+
+                Environment environment =
+                        new Environment(function.closure, arguments);
+                Completion completion =
+                        interpreter.executeBlock(declaration.body, environment);
+
+                // Without closures nothing can still see the frame.
+                if (!declaration.hasClosures) interpreter.frames.release(arguments);
+
+                if (completion == Completion.RETURN) {
+                    return interpreter.takeReturnValue();
+                }
+                if (completion != Completion.TAIL_CALL) return null;
+
+                // Run the function being returned to in this same frame.
+                function = interpreter.tailCallee;
+                arguments = interpreter.tailArguments;
+                interpreter.tailCallee = null;
+                interpreter.tailArguments = null;
+
+                interpreter.enterTailCall();
+                if (interpreter.profile != null) {
+                    interpreter.profile.exit();
+                    interpreter.profile.enter(function.declaration);
+                }
+            }
+        } finally {
+            interpreter.exitCall();
         }
+    }
 
+    private Object profiledCall(Interpreter interpreter, Object[] arguments) {
+        Profiler.Stack profile = interpreter.profile;
+        profile.enter(declaration);
         try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (Return returnValue) {
-            return returnValue.value;
+            return invoke(interpreter, arguments);
+        } finally {
+            profile.exit();
         }
-        return null;
     }
 
     @Override
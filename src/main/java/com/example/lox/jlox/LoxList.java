@@ -0,0 +1,126 @@
+package com.example.lox.jlox;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * A growable list, as created by the {@code list()} native.
+ * <p>
+ * While every element is a number the list keeps them unboxed in a
+ * {@code double[]}. The first time anything else is stored, the elements
+ * move to an {@code Object[]} for good. Like variables, lists shared with
+ * spawned tasks are not synchronized.
+ */
+final class LoxList {
+    private static final int INITIAL_CAPACITY = 8;
+
+    // Exactly one of these is in use: numbers until a non-number arrives.
+    private double[] numbers = new double[INITIAL_CAPACITY];
+    private Object[] values = null;
+    private int size = 0;
+
+    int size() {
+        return size;
+    }
+
+    /** Whether the elements are still kept unboxed. */
+    boolean holdsOnlyNumbers() {
+        return values == null;
+    }
+
+    Object get(int index) {
+        if (values != null) return values[index];
+        return Numbers.box(numbers[index]);
+    }
+
+    void set(int index, Object value) {
+        if (values == null) {
+            if (value instanceof Double) {
+                numbers[index] = (double) value;
+                return;
+            }
+            box();
+        }
+
+        values[index] = value;
+    }
+
+    void add(Object value) {
+        if (values == null) {
+            if (value instanceof Double) {
+                if (size == numbers.length) {
+                    numbers = Arrays.copyOf(numbers, size * 2);
+                }
+                numbers[size++] = (double) value;
+                return;
+            }
+            box();
+        }
+
+        if (size == values.length) values = Arrays.copyOf(values, size * 2);
+        values[size++] = value;
+    }
+
+    private void box() {
+        values = new Object[Math.max(numbers.length, INITIAL_CAPACITY)];
+        for (int i = 0; i < size; i++) {
+            values[i] = Numbers.box(numbers[i]);
+        }
+        numbers = null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        appendTo(builder, Collections.newSetFromMap(new IdentityHashMap<>()));
+        return builder.toString();
+    }
+
+    /** Appends the list, given the lists and maps it is printed inside. */
+    void appendTo(StringBuilder builder, Set<Object> printing) {
+        printing.add(this);
+        builder.append('[');
+        for (int i = 0; i < size; i++) {
+            if (i > 0) builder.append(", ");
+
+            if (values == null) {
+                builder.append(Numbers.toString(numbers[i]));
+            } else {
+                appendElement(builder, values[i], printing);
+            }
+        }
+        builder.append(']');
+        printing.remove(this);
+    }
+
+    /**
+     * Appends a value held by a list or map the way print shows it. A list
+     * or map already being printed further out is shown as "[...]" or
+     * "{...}", so one that contains itself, however indirectly, still
+     * prints.
+     */
+    static void appendElement(StringBuilder builder, Object value,
+                              Set<Object> printing) {
+        if (value == null) {
+            builder.append("nil");
+        } else if (value instanceof Double) {
+            builder.append(Numbers.toString((double) value));
+        } else if (value instanceof LoxList) {
+            if (printing.contains(value)) {
+                builder.append("[...]");
+            } else {
+                ((LoxList) value).appendTo(builder, printing);
+            }
+        } else if (value instanceof LoxMap) {
+            if (printing.contains(value)) {
+                builder.append("{...}");
+            } else {
+                ((LoxMap) value).appendTo(builder, printing);
+            }
+        } else {
+            builder.append(value);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.lox.jlox;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * A hash table from strings and numbers to Lox values, as created by the
+ * {@code map()} native.
+ * <p>
+ * Entries live directly in parallel arrays with linear probing, rather
+ * than in linked nodes. A string key is stored as itself. A number key
+ * is stored unboxed: its slot holds a marker, and its bits are kept in a
+ * {@code long[]} that is only allocated once a map has a number key. Each
+ * slot also remembers its key's hash, so most mismatches are rejected
+ * without comparing keys, and growing the table never rehashes. Removing
+ * an entry shifts later entries back into the gap instead of leaving a
+ * tombstone, so lookups never probe past deleted entries.
+ * <p>
+ * Keys are compared the way {@code ==} compares them: strings by their
+ * characters, numbers as {@link Double#equals} does. Callers pass strings
+ * as {@link String}, flattening any {@link LoxString} first. Like lists,
+ * maps shared with spawned tasks are not synchronized.
+ */
+final class LoxMap {
+    private static final int INITIAL_CAPACITY = 16;
+
+    // In keys[], marks a slot whose key is the number in numbers[].
+    private static final Object NUMBER = new Object();
+
+    // Null where a slot is empty.
+    private Object[] keys = new Object[INITIAL_CAPACITY];
+    private long[] numbers = null;
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int size = 0;
+
+    int size() {
+        return size;
+    }
+
+    boolean containsKey(Object key) {
+        return find(key, hash(key)) >= 0;
+    }
+
+    /** The value for the key, or null if there is none. */
+    Object get(Object key) {
+        int index = find(key, hash(key));
+        return index >= 0 ? values[index] : null;
+    }
+
+    void put(Object key, Object value) {
+        int hash = hash(key);
+        int index = find(key, hash);
+        if (index >= 0) {
+            values[index] = value;
+            return;
+        }
+
+        // Keep at most three quarters of the slots full.
+        if (size + 1 > keys.length - (keys.length >> 2)) {
+            grow();
+            index = find(key, hash);
+        }
+
+        index = ~index;
+        if (key instanceof Double) {
+            if (numbers == null) numbers = new long[keys.length];
+            numbers[index] = Double.doubleToLongBits((double) key);
+            keys[index] = NUMBER;
+        } else {
+            keys[index] = key;
+        }
+        hashes[index] = hash;
+        values[index] = value;
+        size++;
+    }
+
+    /** Removes the key, returning its value, or null if there was none. */
+    Object remove(Object key) {
+        int index = find(key, hash(key));
+        if (index < 0) return null;
+
+        Object value = values[index];
+        size--;
+
+        // Move back each later entry in the run that the gap would hide.
+        int mask = keys.length - 1;
+        int hole = index;
+        for (int i = (hole + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+            int home = hashes[i] & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                move(i, hole);
+                hole = i;
+            }
+        }
+
+        keys[hole] = null;
+        values[hole] = null;
+        return value;
+    }
+
+    /** The keys, in no particular order. */
+    LoxList keys() {
+        LoxList list = new LoxList();
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) list.add(key(i));
+        }
+        return list;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        appendTo(builder, Collections.newSetFromMap(new IdentityHashMap<>()));
+        return builder.toString();
+    }
+
+    /** Appends the map, given the lists and maps it is printed inside. */
+    void appendTo(StringBuilder builder, Set<Object> printing) {
+        printing.add(this);
+        builder.append('{');
+        boolean first = true;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null) continue;
+            if (!first) builder.append(", ");
+            first = false;
+
+            LoxList.appendElement(builder, key(i), printing);
+            builder.append(": ");
+            LoxList.appendElement(builder, values[i], printing);
+        }
+        builder.append('}');
+        printing.remove(this);
+    }
+
+    /**
+     * The slot holding the key, or if it is absent, the complement of the
+     * empty slot where it would go.
+     */
+    private int find(Object key, int hash) {
+        int mask = keys.length - 1;
+
+        if (key instanceof Double) {
+            long bits = Double.doubleToLongBits((double) key);
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                Object slot = keys[i];
+                if (slot == null) return ~i;
+                if (slot == NUMBER && hashes[i] == hash && numbers[i] == bits) {
+                    return i;
+                }
+            }
+        }
+
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            Object slot = keys[i];
+            if (slot == null) return ~i;
+            if (hashes[i] == hash && key.equals(slot)) return i;
+        }
+    }
+
+    private Object key(int index) {
+        if (keys[index] == NUMBER) {
+            return Numbers.box(Double.longBitsToDouble(numbers[index]));
+        }
+        return keys[index];
+    }
+
+    private void move(int from, int to) {
+        keys[to] = keys[from];
+        if (numbers != null) numbers[to] = numbers[from];
+        hashes[to] = hashes[from];
+        values[to] = values[from];
+    }
+
+    private void grow() {
+        Object[] oldKeys = keys;
+        long[] oldNumbers = numbers;
+        int[] oldHashes = hashes;
+        Object[] oldValues = values;
+
+        int capacity = oldKeys.length * 2;
+        keys = new Object[capacity];
+        numbers = oldNumbers == null ? null : new long[capacity];
+        hashes = new int[capacity];
+        values = new Object[capacity];
+
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null) continue;
+
+            int index = oldHashes[i] & mask;
+            while (keys[index] != null) index = (index + 1) & mask;
+
+            keys[index] = oldKeys[i];
+            if (oldNumbers != null) numbers[index] = oldNumbers[i];
+            hashes[index] = oldHashes[i];
+            values[index] = oldValues[i];
+        }
+    }
+
+    private static int hash(Object key) {
+        // Small integers differ only in the high bits of their doubles, so
+        // mix every bit down before the table masks off the low ones.
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.lox.jlox;
+
+/**
+ * A global function implemented in Java.
+ */
+final class LoxNative implements LoxCallable {
+    interface Body {
+        Object call(Interpreter interpreter, Object[] arguments);
+    }
+
+    private final int arity;
+    private final Body body;
+
+    LoxNative(int arity, Body body) {
+        this.arity = arity;
+        this.body = body;
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        return body.call(interpreter, arguments);
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+
+    /**
+     * Thrown by a native body to fail the call with a runtime error. The
+     * interpreter adds the location of the call, which the body does not
+     * know.
+     */
+    static class Failure extends RuntimeException {
+        Failure(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.lox.jlox;
+
+import java.util.List;
+
+/**
+ * A script that a {@link LoxEngine} has scanned, parsed, resolved and
+ * optimized. A program holds none of the state of a run, so the same
+ * instance can be run any number of times, from any number of threads at
+ * once.
+ * <p>
+ * The specializing nodes in the tree do rewrite themselves as they learn
+ * about the values flowing through them, but every state a node can be in
+ * is valid for every run, so sharing them needs no locking.
+ */
+public final class LoxProgram {
+    final List<Stmt> statements;
+
+    LoxProgram(List<Stmt> statements) {
+        this.statements = List.copyOf(statements);
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.lox.jlox;
+
+import java.util.ArrayDeque;
+
+/**
+ * A Lox string built by concatenation, kept as the two strings it joins
+ * rather than copied into a new one. A loop that grows a string a piece at
+ * a time therefore takes linear time instead of quadratic.
+ * <p>
+ * Lox strings are either a Java {@link String}, as every literal is, or one
+ * of these. Code that handles strings checks for {@link CharSequence},
+ * which both implement. The characters are only copied out, once, when
+ * the contents are needed: {@link #toString()} flattens the rope and
+ * drops its halves, so a string that is printed and then extended does
+ * not keep both copies alive.
+ * <p>
+ * Strings can be shared with spawned tasks, so each rope's state is read
+ * and replaced under its own lock.
+ */
+final class LoxString implements CharSequence {
+    // Joining strings shorter than this copies them straight away.
+    private static final int ROPE_THRESHOLD = 256;
+
+    private final int length;
+    private CharSequence left;
+    private CharSequence right;
+    private volatile String flat = null;
+
+    private LoxString(CharSequence left, CharSequence right, int length) {
+        this.left = left;
+        this.right = right;
+        this.length = length;
+    }
+
+    static CharSequence concat(CharSequence left, CharSequence right) {
+        if (left.length() == 0) return right;
+        if (right.length() == 0) return left;
+
+        int length = left.length() + right.length();
+        if (length < ROPE_THRESHOLD) return left.toString() + right;
+
+        return new LoxString(left, right, length);
+    }
+
+    /** Compares the characters of two Lox strings. */
+    static boolean contentEquals(CharSequence a, CharSequence b) {
+        return a.length() == b.length() && a.toString().equals(b.toString());
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        String flat = this.flat;
+        if (flat != null) return flat;
+
+        // Walk the rope with a stack of its own; a string built in a loop
+        // nests as deep as the loop ran.
+        StringBuilder builder = new StringBuilder(length);
+        ArrayDeque<CharSequence> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            CharSequence next = pending.pop();
+            if (!(next instanceof LoxString)) {
+                builder.append(next);
+                continue;
+            }
+
+            LoxString rope = (LoxString) next;
+            synchronized (rope) {
+                if (rope.flat != null) {
+                    builder.append(rope.flat);
+                } else {
+                    pending.push(rope.right);
+                    pending.push(rope.left);
+                }
+            }
+        }
+
+        synchronized (this) {
+            if (this.flat == null) {
+                this.flat = builder.toString();
+                left = null;
+                right = null;
+            }
+            return this.flat;
+        }
+    }
+}
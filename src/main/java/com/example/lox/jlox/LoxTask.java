@@ -0,0 +1,129 @@
+package com.example.lox.jlox;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A function running alongside the code that spawned it, as returned by
+ * the {@code spawn()} native.
+ * <p>
+ * The function runs in a fork of the spawning interpreter. The fork has
+ * its own current environment and return value, so the interpreters never
+ * trip over each other's state, while globals and closed-over variables are
+ * shared.
+ * <p>
+ * A script's run only ends once every task it spawned has finished, so no
+ * task's output is lost. A task that failed without being joined has its
+ * error reported then, since nothing else would see it.
+ */
+final class LoxTask {
+    // Null on releases without virtual threads.
+    private static final ExecutorService virtualThreads = virtualThreads();
+    // Otherwise, pools of daemon threads by the stack size they are made with.
+    private static final Map<Long, ExecutorService> pools =
+            new ConcurrentHashMap<>();
+
+    private final Future<Object> result;
+    // Whether anything has asked for the result, and so seen any failure.
+    private volatile boolean joined = false;
+
+    LoxTask(Interpreter interpreter, LoxCallable function) {
+        Interpreter fork = interpreter.fork();
+        // Added first so the run is already waiting for it once it starts.
+        interpreter.tasks.add(this);
+        this.result = executor(fork.maxCallDepth).submit(() -> {
+            try {
+                return function.call(fork, new Object[function.frameSize()]);
+            } finally {
+                fork.out.flush();
+                fork.flushMetrics();
+            }
+        });
+    }
+
+    /**
+     * Waits for the task and returns what its function returned. If the
+     * function failed, its error is rethrown here, still pointing at the
+     * line that failed.
+     */
+    Object join() {
+        joined = true;
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LoxNative.Failure("Interrupted while joining a task.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /** Waits for the task to finish without looking at how it ended. */
+    void await() throws InterruptedException {
+        try {
+            result.get();
+        } catch (ExecutionException e) {
+            // Reported through unjoinedFailure() or join().
+        }
+    }
+
+    /**
+     * The error of a finished task that failed and was never joined, or
+     * null. Other failures are rethrown, as {@link #join} would.
+     */
+    RuntimeError unjoinedFailure() {
+        if (joined) return null;
+
+        try {
+            join();
+            return null;
+        } catch (RuntimeError error) {
+            return error;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<task>";
+    }
+
+    /**
+     * Uses a virtual thread per task when the runtime has them. On releases
+     * without them, tasks share a pool of daemon threads that, like the
+     * thread running the script, have room for as many calls as are
+     * allowed.
+     */
+    private static ExecutorService executor(int maxCallDepth) {
+        if (virtualThreads != null) return virtualThreads;
+
+        return pools.computeIfAbsent(Interpreter.stackSize(maxCallDepth),
+                stackSize -> Executors.newCachedThreadPool(runnable -> {
+                    Thread thread = new Thread(null, runnable, "lox-task",
+                            stackSize);
+                    thread.setDaemon(true);
+                    return thread;
+                }));
+    }
+
+    /**
+     * Virtual threads are looked up reflectively so the interpreter still
+     * builds and runs on releases without them.
+     */
+    private static ExecutorService virtualThreads() {
+        try {
+            Method factory =
+                    Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+}
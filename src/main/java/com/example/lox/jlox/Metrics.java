@@ -0,0 +1,97 @@
+package com.example.lox.jlox;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters for everything the interpreters in this process do, published
+ * over JMX as {@value #OBJECT_NAME}.
+ * <p>
+ * Starting the platform MBean server takes longer than running a small
+ * script, so the counters are only published once something asks for
+ * them: a {@link LoxEngine}, or {@code --metrics} on the command line.
+ * <p>
+ * Every interpreter, including those in a {@link LoxEngine} and those
+ * running spawned tasks, adds to the same counters. They are striped
+ * {@link LongAdder}s, so threads counting at the same time do not contend.
+ * To keep the cost low enough to leave on, each interpreter also counts in
+ * plain fields and only adds those to the shared counters now and then,
+ * so a reading can lag a running script by a few thousand statements.
+ */
+final class Metrics implements MetricsMBean {
+    static final String OBJECT_NAME = "com.example.lox.jlox:type=Metrics";
+
+    static final Metrics GLOBAL = new Metrics();
+
+    final LongAdder calls = new LongAdder();
+    final LongAdder environments = new LongAdder();
+    final LongAdder statements = new LongAdder();
+    final LongAdder concatenations = new LongAdder();
+    final LongAccumulator peakCallDepth = new LongAccumulator(Math::max, 0);
+    private final long startNanos = System.nanoTime();
+    private boolean published = false;
+
+    private Metrics() {
+    }
+
+    @Override
+    public long getCallsExecuted() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getEnvironmentsCreated() {
+        return environments.sum();
+    }
+
+    @Override
+    public long getPeakCallDepth() {
+        return peakCallDepth.get();
+    }
+
+    @Override
+    public long getStatementsExecuted() {
+        return statements.sum();
+    }
+
+    @Override
+    public double getStatementsPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return statements.sum() / seconds;
+    }
+
+    @Override
+    public long getStringsConcatenated() {
+        return concatenations.sum();
+    }
+
+    void print(PrintStream out) {
+        out.printf("%-24s %d%n", "calls executed", getCallsExecuted());
+        out.printf("%-24s %d%n", "environments created",
+                getEnvironmentsCreated());
+        out.printf("%-24s %d%n", "peak call depth", getPeakCallDepth());
+        out.printf("%-24s %d%n", "statements executed",
+                getStatementsExecuted());
+        out.printf("%-24s %.0f%n", "statements per second",
+                getStatementsPerSecond());
+        out.printf("%-24s %d%n", "strings concatenated",
+                getStringsConcatenated());
+    }
+
+    /** Registers the counters with the platform MBean server, once. */
+    synchronized void publish() {
+        if (published) return;
+        published = true;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException | SecurityException e) {
+            // Still counted, just not visible over JMX.
+        }
+    }
+}
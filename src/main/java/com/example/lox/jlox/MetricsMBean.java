@@ -0,0 +1,19 @@
+package com.example.lox.jlox;
+
+/**
+ * The interpreter counters as seen over JMX. All of them cover every
+ * interpreter in the process since it started.
+ */
+public interface MetricsMBean {
+    long getCallsExecuted();
+
+    long getEnvironmentsCreated();
+
+    long getPeakCallDepth();
+
+    long getStatementsExecuted();
+
+    double getStatementsPerSecond();
+
+    long getStringsConcatenated();
+}
@@ -0,0 +1,129 @@
+package com.example.lox.jlox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Helpers for Lox number values, which are always {@link Double}s at
+ * runtime.
+ */
+final class Numbers {
+    /** The most bytes {@link #writeInteger} writes: 19 digits and a sign. */
+    static final int MAX_INTEGER_LENGTH = 20;
+
+    // Integers with this many digits or fewer are exact doubles.
+    private static final int MAX_EXACT_DIGITS = 15;
+    // Every power of ten up to here is an exact double.
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1023;
+    private static final Double[] cache = new Double[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < cache.length; i++) {
+            cache[i] = (double) (i + CACHE_LOW);
+        }
+    }
+
+    private Numbers() {
+    }
+
+    /**
+     * Boxes a result, sharing one instance for small integral values the
+     * way {@link Integer#valueOf(int)} does. Negative zero is not integral
+     * here so it keeps its sign.
+     */
+    static Double box(double value) {
+        int integer = (int) value;
+        if (integer == value && integer >= CACHE_LOW && integer <= CACHE_HIGH
+            && (integer != 0 || Double.doubleToRawLongBits(value) == 0L)) {
+            return cache[integer - CACHE_LOW];
+        }
+
+        return value;
+    }
+
+    /**
+     * Parses a number literal, digits with an optional fractional part,
+     * straight from the source bytes.
+     * <p>
+     * When the digits fit in a long without rounding and the fraction has
+     * no more places than there are exact powers of ten, the value is one
+     * exact double divided by another. IEEE division rounds that correctly,
+     * so it gives the same double as {@link Double#parseDouble}, which
+     * handles every other literal.
+     */
+    static double parse(ByteBuffer source, int start, int end) {
+        long digits = 0;
+        int significant = 0;
+        int places = 0;
+        boolean fraction = false;
+        for (int i = start; i < end; i++) {
+            byte c = source.get(i);
+            if (c == '.') {
+                fraction = true;
+                continue;
+            }
+
+            digits = digits * 10 + (c - '0');
+            if (digits != 0) significant++;
+            if (fraction) places++;
+            if (significant > MAX_EXACT_DIGITS) break;
+        }
+
+        if (significant <= MAX_EXACT_DIGITS && places < POWERS_OF_TEN.length) {
+            return places == 0 ? digits : digits / POWERS_OF_TEN[places];
+        }
+
+        byte[] text = new byte[end - start];
+        source.get(start, text);
+        return Double.parseDouble(new String(text, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Whether a number prints as its digits alone. Java's own formatting,
+     * which Lox follows, switches to an exponent from 10^7 on.
+     */
+    static boolean isPlainInteger(double value) {
+        return value == (long) value && Math.abs(value) < 1e7
+               && (value != 0 || Double.doubleToRawLongBits(value) == 0L);
+    }
+
+    /**
+     * Writes the digits of a value so they end just before {@code end},
+     * and returns where they start.
+     */
+    static int writeInteger(long value, byte[] into, int end) {
+        boolean negative = value < 0;
+        if (negative) value = -value;
+
+        int start = end;
+        do {
+            into[--start] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        if (negative) into[--start] = '-';
+
+        return start;
+    }
+
+    /** Formats a number the way Lox prints it. */
+    static String toString(double value) {
+        if (isPlainInteger(value)) {
+            byte[] digits = new byte[MAX_INTEGER_LENGTH];
+            int start = writeInteger((long) value, digits, digits.length);
+            return new String(digits, start, digits.length - start,
+                    StandardCharsets.US_ASCII);
+        }
+
+        // Java adds ".0" to integer-valued doubles. The only one left here
+        // is -0; larger ones are written with an exponent, as in 1.0E7.
+        String text = Double.toString(value);
+        if (text.endsWith(".0")) text = text.substring(0, text.length() - 2);
+        return text;
+    }
+}
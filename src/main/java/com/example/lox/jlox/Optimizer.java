@@ -0,0 +1,263 @@
+package com.example.lox.jlox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simplifies a resolved tree before it runs. Operators whose operands are
+ * all literals are folded, groupings are removed, and branches and loops
+ * with a constant condition are cut down to the code that can actually
+ * run.
+ * <p>
+ * A node is only rebuilt when one of its children changed, and the
+ * rebuilt node keeps what the {@link Resolver} recorded on the original.
+ * Visitors return null for a statement that can be dropped entirely.
+ */
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    List<Stmt> optimize(List<Stmt> statements) {
+        List<Stmt> optimized = new ArrayList<>(statements.size());
+        for (Stmt statement : statements) {
+            Stmt result = optimize(statement);
+            if (result != null) optimized.add(result);
+        }
+
+        return optimized;
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        List<Stmt> statements = optimize(stmt.statements);
+        if (statements.isEmpty()) return null;
+        if (statements.equals(stmt.statements)) return stmt;
+
+        Stmt.Block block = new Stmt.Block(statements);
+        block.frameSize = stmt.frameSize;
+        return block;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expression = optimize(stmt.expression);
+
+        // A constant on its own does nothing.
+        if (expression instanceof Expr.Literal) return null;
+        if (expression == stmt.expression) return stmt;
+
+        return new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        List<Stmt> body = optimize(stmt.body);
+        if (body.equals(stmt.body)) return stmt;
+
+        Stmt.Function function = new Stmt.Function(stmt.name, stmt.params, body);
+        function.slot = stmt.slot;
+        function.frameSize = stmt.frameSize;
+        function.hasClosures = stmt.hasClosures;
+        return function;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = optimize(stmt.condition);
+        Stmt thenBranch = optimize(stmt.thenBranch);
+        Stmt elseBranch = stmt.elseBranch == null
+                ? null
+                : optimize(stmt.elseBranch);
+
+        if (condition instanceof Expr.Literal) {
+            return Interpreter.isTruthy(((Expr.Literal) condition).value)
+                    ? thenBranch
+                    : elseBranch;
+        }
+
+        if (condition == stmt.condition && thenBranch == stmt.thenBranch
+            && elseBranch == stmt.elseBranch) {
+            return stmt;
+        }
+
+        return new Stmt.If(condition, orEmpty(thenBranch), elseBranch);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        Expr expression = optimize(stmt.expression);
+        if (expression == stmt.expression) return stmt;
+
+        return new Stmt.Print(expression);
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) return stmt;
+
+        Expr value = optimize(stmt.value);
+        if (value == stmt.value) return stmt;
+
+        Stmt.Return result = new Stmt.Return(stmt.keyword, value);
+        result.tailCall = value instanceof Expr.Call;
+        return result;
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer == null) return stmt;
+
+        Expr initializer = optimize(stmt.initializer);
+        if (initializer == stmt.initializer) return stmt;
+
+        Stmt.Var var = new Stmt.Var(stmt.name, initializer);
+        var.slot = stmt.slot;
+        return var;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = optimize(stmt.condition);
+
+        // A loop that never runs is dropped along with its body.
+        if (condition instanceof Expr.Literal
+            && !Interpreter.isTruthy(((Expr.Literal) condition).value)) {
+            return null;
+        }
+
+        Stmt body = optimize(stmt.body);
+        if (condition == stmt.condition && body == stmt.body) return stmt;
+
+        return new Stmt.While(condition, orEmpty(body));
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        Expr value = optimize(expr.value);
+        if (value == expr.value) return expr;
+
+        Expr.Assign assign = new Expr.Assign(expr.name, value);
+        assign.depth = expr.depth;
+        assign.slot = expr.slot;
+        return assign;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        if (left instanceof Expr.Literal && right instanceof Expr.Literal) {
+            Object leftValue = ((Expr.Literal) left).value;
+            Object rightValue = ((Expr.Literal) right).value;
+
+            // Joined here rather than by Interpreter.binary(), which counts
+            // the concatenations a script performs. Literal strings are
+            // always flat.
+            if (expr.operator.type == TokenType.PLUS
+                && leftValue instanceof CharSequence
+                && rightValue instanceof CharSequence) {
+                return new Expr.Literal(LoxString.concat(
+                        (CharSequence) leftValue,
+                        (CharSequence) rightValue).toString());
+            }
+
+            try {
+                return new Expr.Literal(Interpreter.binary(expr.operator,
+                        leftValue, rightValue));
+            } catch (RuntimeError error) {
+                // Leave it to fail at runtime, if it is ever reached.
+            }
+        }
+
+        if (left == expr.left && right == expr.right) return expr;
+
+        Expr.Binary binary = new Expr.Binary(left, expr.operator, right);
+        binary.numeric = expr.numeric;
+        binary.numericOperands = expr.numericOperands;
+        return binary;
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        Expr callee = optimize(expr.callee);
+        List<Expr> arguments = new ArrayList<>(expr.arguments.size());
+        for (Expr argument : expr.arguments) {
+            arguments.add(optimize(argument));
+        }
+
+        if (callee == expr.callee && arguments.equals(expr.arguments)) {
+            return expr;
+        }
+
+        return new Expr.Call(callee, expr.paren, arguments);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        return optimize(expr.expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        // The result is an operand, not a boolean, so whichever side would
+        // be returned replaces the whole expression.
+        if (left instanceof Expr.Literal) {
+            boolean truthy = Interpreter.isTruthy(((Expr.Literal) left).value);
+            if (expr.operator.type == TokenType.OR) {
+                return truthy ? left : right;
+            } else {
+                return truthy ? right : left;
+            }
+        }
+
+        if (left == expr.left && right == expr.right) return expr;
+
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+
+        if (right instanceof Expr.Literal) {
+            Object value = ((Expr.Literal) right).value;
+            switch (expr.operator.type) {
+                case MINUS:
+                    if (value instanceof Double) {
+                        return new Expr.Literal(Numbers.box(-(double) value));
+                    }
+                    break;
+                case BANG:
+                    return new Expr.Literal(!Interpreter.isTruthy(value));
+            }
+        }
+
+        if (right == expr.right) return expr;
+
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+    private Stmt optimize(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr.accept(this);
+    }
+
+    // Stands in for a removed statement where the grammar requires one.
+    private static Stmt orEmpty(Stmt stmt) {
+        return stmt != null ? stmt : new Stmt.Block(List.of());
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.lox.jlox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Where an interpreter's print statements go. Text is encoded into a
+ * buffer that is only written to the underlying stream when it fills up,
+ * when {@link #flush()} is called, or at the end of each line if the
+ * output is line flushed, as it is for the REPL.
+ * <p>
+ * The buffer belongs to one interpreter and is not synchronized. A
+ * spawned task prints through a {@link #fork()} of its parent's output,
+ * and the interpreter flushes wherever a task can observe another:
+ * spawning, sending on a channel, and finishing. Output printed before one
+ * of those therefore still appears before anything it caused to be
+ * printed.
+ */
+final class Output {
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final byte[] digits = new byte[Numbers.MAX_INTEGER_LENGTH];
+
+    private final OutputStream stream;
+    private final byte[] buffer;
+    private final boolean lineFlushed;
+    private int count = 0;
+
+    Output(OutputStream stream, int bufferSize, boolean lineFlushed) {
+        this.stream = stream;
+        this.buffer = new byte[bufferSize];
+        this.lineFlushed = lineFlushed;
+    }
+
+    /** An output of the same kind that writes to the same stream. */
+    Output fork() {
+        return new Output(stream, buffer.length, lineFlushed);
+    }
+
+    void append(CharSequence text) {
+        int length = text.length();
+        if (count + length > buffer.length) flush();
+
+        // Copy ASCII straight in and hand the rest to the encoder.
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80 || count == buffer.length) {
+                write(text.subSequence(i, length).toString()
+                        .getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            buffer[count++] = (byte) c;
+        }
+    }
+
+    /** Appends a number the way Lox prints it. */
+    void append(double number) {
+        // Integers are the common case, and need no string.
+        if (!Numbers.isPlainInteger(number)) {
+            append(Numbers.toString(number));
+            return;
+        }
+
+        int start = Numbers.writeInteger((long) number, digits, digits.length);
+        int length = digits.length - start;
+        if (count + length > buffer.length) flush();
+        System.arraycopy(digits, start, buffer, count, length);
+        count += length;
+    }
+
+    void newline() {
+        if (count == buffer.length) flush();
+        buffer[count++] = '\n';
+        if (lineFlushed) flush();
+    }
+
+    void flush() {
+        try {
+            stream.write(buffer, 0, count);
+            stream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        count = 0;
+    }
+
+    private void write(byte[] bytes) {
+        if (count + bytes.length > buffer.length) flush();
+
+        if (bytes.length > buffer.length) {
+            try {
+                stream.write(bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            System.arraycopy(bytes, 0, buffer, count, bytes.length);
+            count += bytes.length;
+        }
+    }
+}
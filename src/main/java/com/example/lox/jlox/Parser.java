@@ -6,11 +6,27 @@ import java.util.List;
 import static com.example.lox.jlox.TokenType.*;
 
 class Parser {
-    private final List<Token> tokens;
+    private final TokenBuffer tokens;
+    // Only set when parsing straight from the scanner.
+    private final Scanner scanner;
+    private final ErrorReporter reporter;
     private int current = 0;
 
-    Parser(List<Token> tokens) {
+    /**
+     * Pulls tokens from the scanner as it goes, holding on to no more than
+     * the current token and the one before it.
+     */
+    Parser(Scanner scanner, ErrorReporter reporter) {
+        this.tokens = scanner.newBuffer(2);
+        this.scanner = scanner;
+        this.reporter = reporter;
+        scanner.nextToken(tokens);
+    }
+
+    Parser(TokenBuffer tokens, ErrorReporter reporter) {
         this.tokens = tokens;
+        this.scanner = null;
+        this.reporter = reporter;
     }
 
     List<Stmt> parse() {
@@ -151,7 +167,8 @@ class Parser {
             } while (match(COMMA));
         }
 
-        Token paren = consume(RIGHT_PAREN, "Expect ')' after arguments.");
+        consume(RIGHT_PAREN, "Expect ')' after arguments.");
+        Token paren = previous();
 
         return new Expr.Call(callee, paren, arguments);
     }
@@ -162,7 +179,7 @@ class Parser {
         if (match(NIL)) return new Expr.Literal(null);
 
         if (match(NUMBER, STRING)) {
-            return new Expr.Literal(previous().literal);
+            return new Expr.Literal(tokens.literal(current - 1));
         }
 
         if (match(LEFT_PAREN)) {
@@ -191,7 +208,8 @@ class Parser {
     }
 
     private Stmt.Function function(String kind) {
-        Token name = consume(IDENTIFIER, "Expect " + kind + " name.");
+        consume(IDENTIFIER, "Expect " + kind + " name.");
+        Token name = previous();
         consume(LEFT_PAREN, "Expect '(' after " + kind + " name.");
         List<Token> parameters = new ArrayList<>();
         if (!check(RIGHT_PAREN)) {
@@ -200,7 +218,8 @@ class Parser {
                     error(peek(), "Cannot have more than 255 parameters.");
                 }
 
-                parameters.add(consume(IDENTIFIER, "Expect parameter name."));
+                consume(IDENTIFIER, "Expect parameter name.");
+                parameters.add(previous());
             } while (match(COMMA));
         }
         consume(RIGHT_PAREN, "Expect ')' after parameters.");
@@ -210,7 +229,8 @@ class Parser {
     }
 
     private Stmt varDeclaration() {
-        Token name = consume(IDENTIFIER, "Expect variable name.");
+        consume(IDENTIFIER, "Expect variable name.");
+        Token name = previous();
 
         Expr initializer = null;
         if (match(EQUAL)) {
@@ -340,36 +360,49 @@ class Parser {
         return false;
     }
 
-    private Token consume(TokenType type, String message) {
-        if (check(type)) return advance();
+    private void consume(TokenType type, String message) {
+        if (check(type)) {
+            advance();
+            return;
+        }
 
         throw error(peek(), message);
     }
 
     private boolean check(TokenType type) {
         if (isAtEnd()) return false;
-        return peek().type == type;
+        return tokens.type(current) == type;
     }
 
-    private Token advance() {
-        if (!isAtEnd()) current++;
-        return previous();
+    private void advance() {
+        if (isAtEnd()) return;
+
+        current++;
+        if (scanner != null) {
+            // Forget everything before the previous token, then scan the
+            // new current one.
+            tokens.discard(current - 1);
+            current = 1;
+            scanner.nextToken(tokens);
+        }
     }
 
     private boolean isAtEnd() {
-        return peek().type == EOF;
+        return tokens.type(current) == EOF;
     }
 
+    // Tokens are only materialized for the parts of the source the tree
+    // keeps, or for error messages.
     private Token peek() {
-        return tokens.get(current);
+        return tokens.token(current);
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.token(current - 1);
     }
 
     private ParseError error(Token token, String message) {
-        Lox.error(token, message);
+        reporter.error(token, message);
         return new ParseError();
     }
 
@@ -377,9 +410,9 @@ class Parser {
         advance();
 
         while (!isAtEnd()) {
-            if (previous().type == SEMICOLON) return;
+            if (tokens.type(current - 1) == SEMICOLON) return;
 
-            switch (peek().type) {
+            switch (tokens.type(current)) {
                 case CLASS:
                 case FUN:
                 case VAR:
@@ -0,0 +1,318 @@
+package com.example.lox.jlox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects where a script spends its time, for the {@code --profile} flag.
+ * <p>
+ * Every call to a Lox function is timed, giving call counts and self and
+ * total time per function, and every statement executed is counted and
+ * later attributed to its line. Meanwhile a daemon thread samples the Lox
+ * call stack of every running interpreter, and the samples are written
+ * out in the collapsed-stack format that flame graph tools read.
+ * <p>
+ * An interpreter that is not being profiled has no {@link Stack}, and
+ * checking for that is the only cost profiling adds to it.
+ */
+final class Profiler {
+    private static final long SAMPLE_INTERVAL_MILLIS = 1;
+    private static final int REPORT_ROWS = 10;
+
+    private final Map<Stmt.Function, FunctionStats> functions =
+            new ConcurrentHashMap<>();
+    private final Map<Stmt, LongAdder> statements = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> samples = new ConcurrentHashMap<>();
+    private final List<Stack> stacks = new CopyOnWriteArrayList<>();
+    private final Thread sampler;
+
+    Profiler() {
+        sampler = new Thread(this::sampleUntilInterrupted, "lox-profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    /** The stack of the interpreter running the script itself. */
+    Stack scriptStack() {
+        Stack stack = new Stack("<script>");
+        stack.top = new Frame(null, null, null, System.nanoTime());
+        stacks.add(stack);
+        return stack;
+    }
+
+    /**
+     * Stops sampling, writes the collapsed stacks to the given file and
+     * prints a summary of the hottest functions and lines.
+     */
+    void finish(Path collapsed, PrintStream report) throws IOException {
+        sampler.interrupt();
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try (Writer writer = Files.newBufferedWriter(collapsed,
+                StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, LongAdder> sample
+                    : new TreeMap<>(samples).entrySet()) {
+                writer.write(sample.getKey() + " " + sample.getValue().sum()
+                        + "\n");
+            }
+        }
+
+        report.println("Profile written to " + collapsed + ".");
+        report.printf("%10s %12s %12s  %s%n",
+                "calls", "total ms", "self ms", "function");
+
+        List<Map.Entry<Stmt.Function, FunctionStats>> hottest =
+                new ArrayList<>(functions.entrySet());
+        hottest.sort(Comparator.comparingLong(
+                (Map.Entry<Stmt.Function, FunctionStats> entry) ->
+                        entry.getValue().selfNanos.sum()).reversed());
+        for (Map.Entry<Stmt.Function, FunctionStats> entry
+                : hottest.subList(0, Math.min(REPORT_ROWS, hottest.size()))) {
+            FunctionStats stats = entry.getValue();
+            report.printf("%10d %12.3f %12.3f  %s%n",
+                    stats.calls.sum(),
+                    stats.totalNanos.sum() / 1e6,
+                    stats.selfNanos.sum() / 1e6,
+                    name(entry.getKey()));
+        }
+
+        // Several statements can share a line.
+        Map<Integer, Long> lines = new TreeMap<>();
+        for (Map.Entry<Stmt, LongAdder> entry : statements.entrySet()) {
+            int line = Lines.of(entry.getKey());
+            if (line > 0) lines.merge(line, entry.getValue().sum(), Long::sum);
+        }
+
+        List<Map.Entry<Integer, Long>> hotLines = new ArrayList<>(lines.entrySet());
+        hotLines.sort(Map.Entry.<Integer, Long>comparingByValue().reversed());
+
+        report.printf("%10s  %s%n", "executed", "line");
+        for (Map.Entry<Integer, Long> entry
+                : hotLines.subList(0, Math.min(REPORT_ROWS, hotLines.size()))) {
+            report.printf("%10d  %d%n", entry.getValue(), entry.getKey());
+        }
+    }
+
+    private void sampleUntilInterrupted() {
+        try {
+            for (; ; ) {
+                Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+                for (Stack stack : stacks) stack.sample();
+            }
+        } catch (InterruptedException e) {
+            // Profiling is over.
+        }
+    }
+
+    private static String name(Stmt.Function function) {
+        return function.name.lexeme + ":" + function.name.line;
+    }
+
+    /**
+     * The Lox functions an interpreter is currently inside. Only the
+     * interpreter's own thread pushes and pops frames. The sampler reads
+     * the top, and frames never change once pushed, so it always sees a
+     * consistent stack.
+     */
+    final class Stack {
+        private final String root;
+        private volatile Frame top;
+        // How many calls to each function are on this stack.
+        private final Map<Stmt.Function, int[]> active = new IdentityHashMap<>();
+
+        private Stack(String root) {
+            this.root = root;
+        }
+
+        /** The stack for a task spawned from this stack's interpreter. */
+        Stack fork() {
+            Stack stack = new Stack("<task>");
+            stacks.add(stack);
+            return stack;
+        }
+
+        void count(Stmt stmt) {
+            statements.computeIfAbsent(stmt, key -> new LongAdder())
+                    .increment();
+        }
+
+        void enter(Stmt.Function function) {
+            int[] calls = active.computeIfAbsent(function, key -> new int[1]);
+            calls[0]++;
+            top = new Frame(function, top, calls, System.nanoTime());
+        }
+
+        void exit() {
+            Frame frame = top;
+            long elapsed = System.nanoTime() - frame.start;
+            top = frame.caller;
+            if (top != null) top.calleeNanos += elapsed;
+
+            FunctionStats stats = functions.computeIfAbsent(frame.function,
+                    key -> new FunctionStats());
+            stats.calls.increment();
+            stats.selfNanos.add(elapsed - frame.calleeNanos);
+
+            // A recursive call's time is already part of the outermost one.
+            if (--frame.active[0] == 0) stats.totalNanos.add(elapsed);
+        }
+
+        private void sample() {
+            Frame frame = top;
+            if (frame == null) return;
+
+            List<String> names = new ArrayList<>();
+            for (; frame != null; frame = frame.caller) {
+                if (frame.function != null) names.add(name(frame.function));
+            }
+
+            StringBuilder collapsed = new StringBuilder(root);
+            for (int i = names.size() - 1; i >= 0; i--) {
+                collapsed.append(';').append(names.get(i));
+            }
+
+            samples.computeIfAbsent(collapsed.toString(),
+                    key -> new LongAdder()).increment();
+        }
+    }
+
+    private static final class Frame {
+        // Null for the bottom frame of the script.
+        final Stmt.Function function;
+        final Frame caller;
+        // The stack's count of active calls to the function.
+        final int[] active;
+        final long start;
+        // Only touched by the owning thread.
+        long calleeNanos = 0;
+
+        Frame(Stmt.Function function, Frame caller, int[] active, long start) {
+            this.function = function;
+            this.caller = caller;
+            this.active = active;
+            this.start = start;
+        }
+    }
+
+    private static final class FunctionStats {
+        final LongAdder calls = new LongAdder();
+        final LongAdder selfNanos = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+    }
+
+    /** Finds the line a statement starts on from the tokens it kept. */
+    private static final class Lines implements Stmt.Visitor<Integer>,
+            Expr.Visitor<Integer> {
+        private static final Lines INSTANCE = new Lines();
+
+        static int of(Stmt stmt) {
+            return stmt.accept(INSTANCE);
+        }
+
+        private int of(Expr expr) {
+            return expr == null ? 0 : expr.accept(this);
+        }
+
+        @Override
+        public Integer visitBlockStmt(Stmt.Block stmt) {
+            // Counted through the statements inside it.
+            return 0;
+        }
+
+        @Override
+        public Integer visitExpressionStmt(Stmt.Expression stmt) {
+            return of(stmt.expression);
+        }
+
+        @Override
+        public Integer visitFunctionStmt(Stmt.Function stmt) {
+            return stmt.name.line;
+        }
+
+        @Override
+        public Integer visitIfStmt(Stmt.If stmt) {
+            return of(stmt.condition);
+        }
+
+        @Override
+        public Integer visitPrintStmt(Stmt.Print stmt) {
+            return of(stmt.expression);
+        }
+
+        @Override
+        public Integer visitReturnStmt(Stmt.Return stmt) {
+            return stmt.keyword.line;
+        }
+
+        @Override
+        public Integer visitVarStmt(Stmt.Var stmt) {
+            return stmt.name.line;
+        }
+
+        @Override
+        public Integer visitWhileStmt(Stmt.While stmt) {
+            return of(stmt.condition);
+        }
+
+        @Override
+        public Integer visitAssignExpr(Expr.Assign expr) {
+            return expr.name.line;
+        }
+
+        @Override
+        public Integer visitBinaryExpr(Expr.Binary expr) {
+            int line = of(expr.left);
+            return line > 0 ? line : expr.operator.line;
+        }
+
+        @Override
+        public Integer visitCallExpr(Expr.Call expr) {
+            int line = of(expr.callee);
+            return line > 0 ? line : expr.paren.line;
+        }
+
+        @Override
+        public Integer visitGroupingExpr(Expr.Grouping expr) {
+            return of(expr.expression);
+        }
+
+        @Override
+        public Integer visitLiteralExpr(Expr.Literal expr) {
+            // Literals keep no token.
+            return 0;
+        }
+
+        @Override
+        public Integer visitLogicalExpr(Expr.Logical expr) {
+            int line = of(expr.left);
+            return line > 0 ? line : expr.operator.line;
+        }
+
+        @Override
+        public Integer visitUnaryExpr(Expr.Unary expr) {
+            return expr.operator.line;
+        }
+
+        @Override
+        public Integer visitVariableExpr(Expr.Variable expr) {
+            return expr.name.line;
+        }
+    }
+}
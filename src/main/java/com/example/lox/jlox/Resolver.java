@@ -0,0 +1,328 @@
+package com.example.lox.jlox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Static pass run between the parser and the interpreter. It gives every
+ * local variable a (depth, slot) address so the interpreter never has to
+ * look locals up by name. Anything not found in an enclosing scope is left
+ * unresolved and treated as a global.
+ * <p>
+ * Scoping is lexical: a function sees the variables in scope where it is
+ * declared, not ones declared later in an enclosing block, which would
+ * shadow the outer variable only for code after them. The exception is
+ * local functions. Each block reserves slots for the functions declared
+ * directly in it before resolving any of them, so functions in the same
+ * block can call each other whatever order they are declared in. Until
+ * its declaration runs, such a function is only visible from inside other
+ * functions; code in the block itself still sees any outer variable of
+ * the same name.
+ */
+class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private final ErrorReporter reporter;
+    private final List<Scope> scopes = new ArrayList<>();
+    private FunctionType currentFunction = FunctionType.NONE;
+    private Stmt.Function currentDeclaration = null;
+    // How many function bodies enclose the code being resolved.
+    private int functionDepth = 0;
+
+    Resolver(ErrorReporter reporter) {
+        this.reporter = reporter;
+    }
+
+    void resolve(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            resolve(statement);
+        }
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        hoistFunctions(stmt.statements);
+        resolve(stmt.statements);
+        stmt.frameSize = endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        // Declare the name first so the function can refer to itself.
+        stmt.slot = declare(stmt.name);
+
+        // The closure can outlive the enclosing function's frame.
+        if (currentDeclaration != null) currentDeclaration.hasClosures = true;
+
+        resolveFunction(stmt, FunctionType.FUNCTION);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        resolve(stmt.condition);
+        resolve(stmt.thenBranch);
+        if (stmt.elseBranch != null) resolve(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (currentFunction == FunctionType.NONE) {
+            reporter.error(stmt.keyword, "Cannot return from top-level code.");
+        }
+
+        if (stmt.value != null) {
+            resolve(stmt.value);
+        }
+
+        // Nothing is left to do in this function once the call returns.
+        stmt.tailCall = stmt.value instanceof Expr.Call;
+
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        // The initializer still sees any outer variable with the same name.
+        if (stmt.initializer != null) {
+            resolve(stmt.initializer);
+        }
+
+        stmt.slot = declare(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        resolve(stmt.condition);
+        resolve(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        resolve(expr.value);
+
+        int scope = scopeOf(expr.name);
+        if (scope != -1) {
+            expr.depth = scopes.size() - 1 - scope;
+            expr.slot = scopes.get(scope).slots.get(expr.name.lexeme);
+        } else {
+            // Otherwise it is assumed to be global.
+            global(expr.name);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+
+        // Arithmetic either yields a number or fails, so the interpreter
+        // can keep the whole subtree unboxed. '+' only qualifies when one
+        // operand is already known to be a number. A comparison is not a
+        // number itself, but can still take such an operand unboxed.
+        switch (expr.operator.type) {
+            case MINUS, SLASH, STAR -> expr.numeric = true;
+            case PLUS -> expr.numeric =
+                    isNumeric(expr.left) || isNumeric(expr.right);
+            case GREATER, GREATER_EQUAL, LESS, LESS_EQUAL,
+                 EQUAL_EQUAL, BANG_EQUAL -> expr.numericOperands =
+                    isArithmetic(expr.left) || isArithmetic(expr.right);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        resolve(expr.callee);
+
+        for (Expr argument : expr.arguments) {
+            resolve(argument);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        resolve(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        int scope = scopeOf(expr.name);
+        if (scope != -1) {
+            expr.depth = scopes.size() - 1 - scope;
+            expr.slot = scopes.get(scope).slots.get(expr.name.lexeme);
+        } else {
+            // Otherwise it is assumed to be global.
+            global(expr.name);
+        }
+
+        return null;
+    }
+
+    /** The index of the innermost scope the name is visible in, or -1. */
+    private int scopeOf(Token name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Scope scope = scopes.get(i);
+            if (!scope.slots.containsKey(name.lexeme)) continue;
+
+            // A function not yet declared is only visible to inner functions.
+            if (scope.hoisted.contains(name.lexeme) &&
+                scope.functionDepth == functionDepth) {
+                continue;
+            }
+
+            return i;
+        }
+
+        return -1;
+    }
+
+    private void resolve(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void resolve(Expr expr) {
+        expr.accept(this);
+    }
+
+    private static boolean isNumeric(Expr expr) {
+        if (expr instanceof Expr.Literal) {
+            return ((Expr.Literal) expr).value instanceof Double;
+        }
+
+        return expr instanceof Expr.Binary && ((Expr.Binary) expr).numeric;
+    }
+
+    private static boolean isArithmetic(Expr expr) {
+        return expr instanceof Expr.Binary && ((Expr.Binary) expr).numeric;
+    }
+
+    private void resolveFunction(Stmt.Function function, FunctionType type) {
+        FunctionType enclosingFunction = currentFunction;
+        Stmt.Function enclosingDeclaration = currentDeclaration;
+        currentFunction = type;
+        currentDeclaration = function;
+        functionDepth++;
+
+        beginScope();
+        Scope scope = scopes.get(scopes.size() - 1);
+        for (Token param : function.params) {
+            // Parameters are bound by position, so each one gets its own
+            // slot even if a name is repeated; the last one wins.
+            scope.slots.put(param.lexeme, scope.size++);
+        }
+        hoistFunctions(function.body);
+        resolve(function.body);
+        function.frameSize = endScope();
+
+        functionDepth--;
+        currentDeclaration = enclosingDeclaration;
+        currentFunction = enclosingFunction;
+    }
+
+    /** Reserves slots for the functions declared directly in a block. */
+    private void hoistFunctions(List<Stmt> statements) {
+        Scope scope = scopes.get(scopes.size() - 1);
+        for (Stmt statement : statements) {
+            if (!(statement instanceof Stmt.Function)) continue;
+
+            String name = ((Stmt.Function) statement).name.lexeme;
+            if (scope.slots.containsKey(name)) continue;
+
+            scope.slots.put(name, scope.size++);
+            scope.hoisted.add(name);
+        }
+    }
+
+    private void beginScope() {
+        scopes.add(new Scope(functionDepth));
+    }
+
+    private int endScope() {
+        return scopes.remove(scopes.size() - 1).size;
+    }
+
+    private int declare(Token name) {
+        if (scopes.isEmpty()) {
+            global(name);
+            return -1;
+        }
+
+        // Redeclaring a local reuses its slot, so closures that already
+        // captured it see the new value.
+        Scope scope = scopes.get(scopes.size() - 1);
+        scope.hoisted.remove(name.lexeme);
+        Integer slot = scope.slots.get(name.lexeme);
+        if (slot != null) return slot;
+
+        scope.slots.put(name.lexeme, scope.size);
+        return scope.size++;
+    }
+
+    /**
+     * Gives a global name its id. Only globals are interned, so the symbol
+     * table does not grow with every local and parameter ever scanned.
+     */
+    private static void global(Token name) {
+        if (name.symbol < 0) name.symbol = SymbolTable.GLOBAL.intern(name.lexeme);
+    }
+
+    private enum FunctionType {
+        NONE,
+        FUNCTION
+    }
+
+    private static class Scope {
+        final Map<String, Integer> slots = new HashMap<>();
+        // Functions with a reserved slot whose declaration is still ahead.
+        final Set<String> hoisted = new HashSet<>();
+        final int functionDepth;
+        int size;
+
+        Scope(int functionDepth) {
+            this.functionDepth = functionDepth;
+        }
+    }
+}
@@ -1,53 +1,70 @@
 package com.example.lox.jlox;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import static com.example.lox.jlox.TokenType.*;
-import static java.util.Map.entry;
 
+/**
+ * Turns UTF-8 source bytes into tokens on demand. The source is usually a
+ * memory-mapped file, so neither the text nor the token list of a large
+ * script has to fit on the heap at once. Tokens are recorded as offsets
+ * into the source in a {@link TokenBuffer}; nothing is copied out of it
+ * while scanning.
+ */
 class Scanner {
-    private static final Map<String, TokenType> keywords;
-
-    static {
-        keywords = Map.ofEntries(
-                entry("and", AND),
-                entry("class", CLASS),
-                entry("else", ELSE),
-                entry("false", FALSE),
-                entry("for", FOR),
-                entry("fun", FUN),
-                entry("if", IF),
-                entry("nil", NIL),
-                entry("or", OR),
-                entry("print", PRINT),
-                entry("return", RETURN),
-                entry("super", SUPER),
-                entry("this", THIS),
-                entry("true", TRUE),
-                entry("var", VAR),
-                entry("while", WHILE));
-    }
-
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private final ByteBuffer source;
+    private final int length;
+    private final SymbolTable symbols = SymbolTable.GLOBAL;
+    private final ErrorReporter reporter;
+    private TokenBuffer tokens = null;
+    private boolean added = false;
     private int start = 0;
     private int current = 0;
     private int line = 1;
 
-    Scanner(String source) {
+    Scanner(String source, ErrorReporter reporter) {
+        this(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)),
+                reporter);
+    }
+
+    Scanner(ByteBuffer source, ErrorReporter reporter) {
         this.source = source;
+        this.length = source.limit();
+        this.reporter = reporter;
+    }
+
+    /** Creates an empty buffer for tokens scanned from this source. */
+    TokenBuffer newBuffer(int capacity) {
+        return new TokenBuffer(source, symbols, capacity);
     }
 
-    List<Token> scanTokens() {
+    /**
+     * Scans the next token onto the end of the buffer. Once the source is
+     * exhausted every call adds an EOF token.
+     */
+    void nextToken(TokenBuffer tokens) {
+        this.tokens = tokens;
+        added = false;
+
         while (!isAtEnd()) {
             // We are at the beginning of the next lexeme.
             start = current;
             scanToken();
+
+            if (added) return;
         }
 
-        tokens.add(new Token(EOF, "", null, line));
+        tokens.add(EOF, current, 0, line, -1);
+    }
+
+    TokenBuffer scanTokens() {
+        // Scripts average somewhere around one token per six bytes.
+        TokenBuffer tokens = newBuffer(Math.max(16, length / 6));
+        do {
+            nextToken(tokens);
+        } while (tokens.type(tokens.size() - 1) != EOF);
+
         return tokens;
     }
 
@@ -86,8 +103,10 @@ class Scanner {
                     number();
                 } else if (isAlpha(c)) {
                     identifier();
+                } else if (isContinuationByte(c)) {
+                    // Rest of a multi-byte character already reported.
                 } else {
-                    Lox.error(line, "Unexpected character.");
+                    reporter.error(line, "Unexpected character.");
                 }
             }
         }
@@ -95,12 +114,13 @@ class Scanner {
 
     private void identifier() {
         while (isAlphaNumeric(peek())) advance();
-        // See if the identifier is a reserved word.
-        String text = source.substring(start, current);
+        // See if the identifier is a reserved word. Names are only added
+        // to the table once the Resolver finds they refer to globals.
+        int symbol = symbols.lookup(source, start, current - start);
 
-        TokenType type = keywords.get(text);
+        TokenType type = symbols.keyword(symbol);
         if (type == null) type = IDENTIFIER;
-        addToken(type);
+        addToken(type, symbol);
     }
 
     private void number() {
@@ -114,8 +134,7 @@ class Scanner {
             while (isDigit(peek())) advance();
         }
 
-        addToken(NUMBER,
-                Double.parseDouble(source.substring(start, current)));
+        addToken(NUMBER);
     }
 
     private void string() {
@@ -126,21 +145,19 @@ class Scanner {
 
         // Unterminated string.
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated string.");
+            reporter.error(line, "Unterminated string.");
             return;
         }
 
         // The closing ".
         advance();
 
-        // Trim the surrounding quotes.
-        String value = source.substring(start + 1, current - 1);
-        addToken(STRING, value);
+        addToken(STRING);
     }
 
     private boolean match(char expected) {
         if (isAtEnd()) return false;
-        if (source.charAt(current) != expected) return false;
+        if (charAt(current) != expected) return false;
 
         current++;
         return true;
@@ -148,12 +165,12 @@ class Scanner {
 
     private char peek() {
         if (isAtEnd()) return '\0';
-        return source.charAt(current);
+        return charAt(current);
     }
 
     private char peekNext() {
-        if (current + 1 >= source.length()) return '\0';
-        return source.charAt(current + 1);
+        if (current + 1 >= length) return '\0';
+        return charAt(current + 1);
     }
 
     private boolean isAlpha(char c) {
@@ -170,21 +187,33 @@ class Scanner {
         return c >= '0' && c <= '9';
     }
 
+    private boolean isContinuationByte(char c) {
+        return (c & 0xc0) == 0x80;
+    }
+
     private boolean isAtEnd() {
-        return current >= source.length();
+        return current >= length;
     }
 
     private char advance() {
         current++;
-        return source.charAt(current - 1);
+        return charAt(current - 1);
+    }
+
+    /**
+     * Reads one byte of source. Everything outside string literals and
+     * comments is ASCII, so bytes stand in for characters.
+     */
+    private char charAt(int index) {
+        return (char) (source.get(index) & 0xff);
     }
 
     private void addToken(TokenType type) {
-        addToken(type, null);
+        addToken(type, -1);
     }
 
-    private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+    private void addToken(TokenType type, int symbol) {
+        tokens.add(type, start, current - start, line, symbol);
+        added = true;
     }
 }
@@ -0,0 +1,508 @@
+package com.example.lox.jlox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-disk cache of parsed scripts. The syntax tree of a script is written
+ * in a compact binary form to a file named after the SHA-256 hash of its
+ * source, so running an unchanged script again maps that file and rebuilds
+ * the tree without scanning or parsing anything.
+ * <p>
+ * Only the parser's output is stored. Resolution and optimization are
+ * cheap single passes and still run on every load, which keeps the format
+ * independent of both.
+ */
+class ScriptCache {
+    private static final int MAGIC = 0x4c4f5843; // "LOXC"
+    private static final int VERSION = 1;
+
+    // Node tags. Zero marks an absent optional child.
+    private static final int NONE = 0;
+    private static final int ASSIGN = 1;
+    private static final int BINARY = 2;
+    private static final int CALL = 3;
+    private static final int GROUPING = 4;
+    private static final int LITERAL = 5;
+    private static final int LOGICAL = 6;
+    private static final int UNARY = 7;
+    private static final int VARIABLE = 8;
+    private static final int BLOCK = 9;
+    private static final int EXPRESSION = 10;
+    private static final int FUNCTION = 11;
+    private static final int IF = 12;
+    private static final int PRINT = 13;
+    private static final int RETURN = 14;
+    private static final int VAR = 15;
+    private static final int WHILE = 16;
+
+    // Literal value tags.
+    private static final int NIL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int NUMBER = 3;
+    private static final int STRING = 4;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final Path directory;
+
+    ScriptCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /** Hashes a script's source into the key its tree is cached under. */
+    static String key(ByteBuffer source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(source.duplicate());
+
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest()) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16));
+                key.append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Returns the cached tree for a key, or null if there is none or the
+     * entry cannot be read.
+     */
+    List<Stmt> load(String key) {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path(key),
+                StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            // Most likely there is no entry yet.
+            return null;
+        }
+
+        try {
+            return new Reader(buffer).read();
+        } catch (RuntimeException e) {
+            // Truncated, corrupt or from another version. It gets
+            // overwritten once the script has been parsed again.
+            return null;
+        }
+    }
+
+    /**
+     * Writes a tree to the cache. This is best effort: a script still runs
+     * if its tree cannot be saved.
+     */
+    void store(String key, List<Stmt> statements) {
+        try {
+            Files.createDirectories(directory);
+
+            // Write to a temporary file and move it into place so
+            // concurrent runs never see a partial entry.
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            try {
+                Files.write(temp, new Writer().write(statements));
+                Files.move(temp, path(key), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            // Leave the script uncached.
+        }
+    }
+
+    private Path path(String key) {
+        return directory.resolve(key + ".lxc");
+    }
+
+    private static class Writer
+            implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final List<String> stringList = new ArrayList<>();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        byte[] write(List<Stmt> statements) throws IOException {
+            writeStatements(statements);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeInt(out, stringList.size());
+            for (String string : stringList) {
+                byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+                writeInt(out, utf8.length);
+                out.write(utf8);
+            }
+            body.writeTo(out);
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            tag(BLOCK);
+            writeStatements(stmt.statements);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            tag(EXPRESSION);
+            write(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt) {
+            tag(FUNCTION);
+            write(stmt.name);
+            writeInt(body, stmt.params.size());
+            for (Token param : stmt.params) {
+                write(param);
+            }
+            writeStatements(stmt.body);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt) {
+            tag(IF);
+            write(stmt.condition);
+            write(stmt.thenBranch);
+            write(stmt.elseBranch);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            tag(PRINT);
+            write(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt) {
+            tag(RETURN);
+            write(stmt.keyword);
+            write(stmt.value);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            tag(VAR);
+            write(stmt.name);
+            write(stmt.initializer);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            tag(WHILE);
+            write(stmt.condition);
+            write(stmt.body);
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            tag(ASSIGN);
+            write(expr.name);
+            write(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            tag(BINARY);
+            write(expr.left);
+            write(expr.operator);
+            write(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            tag(CALL);
+            write(expr.callee);
+            write(expr.paren);
+            writeInt(body, expr.arguments.size());
+            for (Expr argument : expr.arguments) {
+                write(argument);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            tag(GROUPING);
+            write(expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            tag(LITERAL);
+            Object value = expr.value;
+            if (value == null) {
+                tag(NIL);
+            } else if (value instanceof Boolean) {
+                tag((boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Double) {
+                tag(NUMBER);
+                long bits = Double.doubleToRawLongBits((double) value);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    body.write((int) (bits >>> shift));
+                }
+            } else {
+                tag(STRING);
+                writeString((String) value);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            tag(LOGICAL);
+            write(expr.left);
+            write(expr.operator);
+            write(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            tag(UNARY);
+            write(expr.operator);
+            write(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            tag(VARIABLE);
+            write(expr.name);
+            return null;
+        }
+
+        private void writeStatements(List<Stmt> statements) {
+            writeInt(body, statements.size());
+            for (Stmt statement : statements) {
+                write(statement);
+            }
+        }
+
+        private void write(Stmt stmt) {
+            if (stmt == null) {
+                tag(NONE);
+            } else {
+                stmt.accept(this);
+            }
+        }
+
+        private void write(Expr expr) {
+            if (expr == null) {
+                tag(NONE);
+            } else {
+                expr.accept(this);
+            }
+        }
+
+        // The tree only keeps tokens for names, operators and keywords,
+        // none of which carry a literal.
+        private void write(Token token) {
+            body.write(token.type.ordinal());
+            writeString(token.lexeme);
+            writeInt(body, token.line);
+        }
+
+        private void writeString(String string) {
+            Integer index = strings.get(string);
+            if (index == null) {
+                index = stringList.size();
+                strings.put(string, index);
+                stringList.add(string);
+            }
+            writeInt(body, index);
+        }
+
+        private void tag(int tag) {
+            body.write(tag);
+        }
+
+        // Unsigned LEB128, since almost every count and line is small.
+        private static void writeInt(OutputStream out, int value) {
+            try {
+                while ((value & ~0x7f) != 0) {
+                    out.write((value & 0x7f) | 0x80);
+                    value >>>= 7;
+                }
+                out.write(value);
+            } catch (IOException e) {
+                // In-memory streams do not throw.
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    private static class Reader {
+        private final ByteBuffer buffer;
+        private String[] strings;
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        List<Stmt> read() {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+
+            strings = new String[readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] utf8 = new byte[readInt()];
+                buffer.get(utf8);
+                strings[i] = new String(utf8, StandardCharsets.UTF_8);
+            }
+
+            List<Stmt> statements = readStatements();
+            if (buffer.hasRemaining()) return null;
+            return statements;
+        }
+
+        private List<Stmt> readStatements() {
+            int count = readInt();
+            List<Stmt> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                statements.add(readStmt());
+            }
+            return statements;
+        }
+
+        private Stmt readStmt() {
+            int tag = buffer.get();
+            switch (tag) {
+                case NONE:
+                    return null;
+                case BLOCK:
+                    return new Stmt.Block(readStatements());
+                case EXPRESSION:
+                    return new Stmt.Expression(readExpr());
+                case FUNCTION: {
+                    Token name = readToken();
+                    int count = readInt();
+                    List<Token> params = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        params.add(readToken());
+                    }
+                    return new Stmt.Function(name, params, readStatements());
+                }
+                case IF:
+                    return new Stmt.If(readExpr(), readStmt(), readStmt());
+                case PRINT:
+                    return new Stmt.Print(readExpr());
+                case RETURN:
+                    return new Stmt.Return(readToken(), readExpr());
+                case VAR:
+                    return new Stmt.Var(readToken(), readExpr());
+                case WHILE:
+                    return new Stmt.While(readExpr(), readStmt());
+            }
+
+            throw new IllegalArgumentException("Unknown statement tag " + tag);
+        }
+
+        private Expr readExpr() {
+            int tag = buffer.get();
+            switch (tag) {
+                case NONE:
+                    return null;
+                case ASSIGN:
+                    return new Expr.Assign(readToken(), readExpr());
+                case BINARY:
+                    return new Expr.Binary(readExpr(), readToken(), readExpr());
+                case CALL: {
+                    Expr callee = readExpr();
+                    Token paren = readToken();
+                    int count = readInt();
+                    List<Expr> arguments = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        arguments.add(readExpr());
+                    }
+                    return new Expr.Call(callee, paren, arguments);
+                }
+                case GROUPING:
+                    return new Expr.Grouping(readExpr());
+                case LITERAL:
+                    return new Expr.Literal(readValue());
+                case LOGICAL:
+                    return new Expr.Logical(readExpr(), readToken(), readExpr());
+                case UNARY:
+                    return new Expr.Unary(readToken(), readExpr());
+                case VARIABLE:
+                    return new Expr.Variable(readToken());
+            }
+
+            throw new IllegalArgumentException("Unknown expression tag " + tag);
+        }
+
+        private Object readValue() {
+            int tag = buffer.get();
+            switch (tag) {
+                case NIL:
+                    return null;
+                case FALSE:
+                    return false;
+                case TRUE:
+                    return true;
+                case NUMBER:
+                    return buffer.getDouble();
+                case STRING:
+                    return strings[readInt()];
+            }
+
+            throw new IllegalArgumentException("Unknown value tag " + tag);
+        }
+
+        // Symbol ids only mean something within one process, so names are
+        // looked up again as they are read.
+        private Token readToken() {
+            TokenType type = TYPES[buffer.get()];
+            String lexeme = strings[readInt()];
+            int line = readInt();
+            int symbol = type == TokenType.IDENTIFIER
+                    ? SymbolTable.GLOBAL.lookup(lexeme)
+                    : -1;
+            return new Token(type, lexeme, null, line, symbol);
+        }
+
+        private int readInt() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer.get();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+        }
+    }
+}
@@ -25,6 +25,7 @@ abstract class Stmt {
 
     static class Block extends Stmt {
         final List<Stmt> statements;
+        int frameSize;
 
         Block(List<Stmt> statements) {
             this.statements = statements;
@@ -53,6 +54,9 @@ abstract class Stmt {
         final Token name;
         final List<Token> params;
         final List<Stmt> body;
+        int slot = -1;
+        int frameSize;
+        boolean hasClosures;
 
         Function(Token name, List<Token> params, List<Stmt> body) {
             this.name = name;
@@ -99,6 +103,7 @@ abstract class Stmt {
     static class Return extends Stmt {
         final Token keyword;
         final Expr value;
+        boolean tailCall;
 
         Return(Token keyword, Expr value) {
             this.keyword = keyword;
@@ -114,6 +119,7 @@ abstract class Stmt {
     static class Var extends Stmt {
         final Token name;
         final Expr initializer;
+        int slot = -1;
 
         Var(Token name, Expr initializer) {
             this.name = name;
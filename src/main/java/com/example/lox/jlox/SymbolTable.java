@@ -0,0 +1,179 @@
+package com.example.lox.jlox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static com.example.lox.jlox.TokenType.*;
+
+/**
+ * Interns the names of globals as small int ids. Lookups hash the bytes of
+ * the source in place, so a name that has been seen before costs no
+ * allocation at all. The reserved words are interned first, which makes
+ * recognizing a keyword a range check on its id.
+ * <p>
+ * There is one table for the whole process, so an id means the same name
+ * in every script, token and environment. Entries are never removed, so
+ * only keywords and global names are added; the scanner merely looks the
+ * other identifiers up, and locals never need an id.
+ * <p>
+ * Files are scanned in parallel, so lookups of names already in the table
+ * take no lock. Entries never change once added, and a lookup that races
+ * with an addition at worst misses and then tries again under the lock.
+ */
+final class SymbolTable {
+    private static final TokenType[] KEYWORDS = Arrays.copyOfRange(
+            TokenType.values(), AND.ordinal(), WHILE.ordinal() + 1);
+
+    static final SymbolTable GLOBAL = new SymbolTable();
+
+    private volatile Entry[] entries = new Entry[64];
+    private int count = 0;
+
+    // Open addressing over the ids above, offset by one so zero is empty.
+    private volatile int[] table = new int[128];
+
+    private SymbolTable() {
+        for (TokenType keyword : KEYWORDS) {
+            byte[] spelling = keyword.name().toLowerCase()
+                    .getBytes(StandardCharsets.US_ASCII);
+            intern(ByteBuffer.wrap(spelling), 0, spelling.length);
+        }
+    }
+
+    /**
+     * Returns the id of the identifier spelled by the given bytes of
+     * source, adding it if this is its first appearance.
+     */
+    int intern(ByteBuffer source, int start, int length) {
+        int hash = hash(source, start, length);
+        int id = find(source, start, length, hash);
+        if (id >= 0) return id;
+
+        return add(source, start, length, hash);
+    }
+
+    int intern(String name) {
+        byte[] spelling = name.getBytes(StandardCharsets.UTF_8);
+        return intern(ByteBuffer.wrap(spelling), 0, spelling.length);
+    }
+
+    /**
+     * Returns the id of the identifier spelled by the given bytes of
+     * source, or -1 if it has not been interned.
+     */
+    int lookup(ByteBuffer source, int start, int length) {
+        return find(source, start, length, hash(source, start, length));
+    }
+
+    int lookup(String name) {
+        byte[] spelling = name.getBytes(StandardCharsets.UTF_8);
+        return lookup(ByteBuffer.wrap(spelling), 0, spelling.length);
+    }
+
+    /** The keyword type for an id, or null for an ordinary identifier. */
+    TokenType keyword(int id) {
+        return id >= 0 && id < KEYWORDS.length ? KEYWORDS[id] : null;
+    }
+
+    String name(int id) {
+        Entry[] entries = this.entries;
+        if (id < entries.length && entries[id] != null) {
+            return entries[id].name;
+        }
+
+        // Added by another thread that has not finished publishing it.
+        synchronized (this) {
+            return this.entries[id].name;
+        }
+    }
+
+    private static int hash(ByteBuffer source, int start, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = start; i < start + length; i++) {
+            hash = (hash ^ (source.get(i) & 0xff)) * 0x01000193;
+        }
+        return hash;
+    }
+
+    /**
+     * Looks a spelling up without locking. Seeing a slot before the entry
+     * it refers to, or an old table, only makes this return -1.
+     */
+    private int find(ByteBuffer source, int start, int length, int hash) {
+        int[] table = this.table;
+        Entry[] entries = this.entries;
+
+        int mask = table.length - 1;
+        for (int index = hash & mask; ; index = (index + 1) & mask) {
+            int slot = table[index];
+            if (slot == 0) return -1;
+
+            int id = slot - 1;
+            if (id >= entries.length) return -1;
+
+            Entry entry = entries[id];
+            if (entry == null) return -1;
+            if (entry.hash == hash && entry.matches(source, start, length)) {
+                return id;
+            }
+        }
+    }
+
+    private synchronized int add(ByteBuffer source, int start, int length,
+                                 int hash) {
+        // Another thread may have added it since the lookup.
+        int existing = find(source, start, length, hash);
+        if (existing >= 0) return existing;
+
+        byte[] spelling = new byte[length];
+        source.get(start, spelling);
+
+        if (count == entries.length) {
+            entries = Arrays.copyOf(entries, count * 2);
+        }
+
+        int id = count++;
+        entries[id] = new Entry(spelling, hash);
+
+        // Keep the table at most half full.
+        if (count * 2 > table.length) {
+            int[] grown = new int[table.length * 2];
+            for (int i = 0; i < count; i++) insert(grown, i);
+            table = grown;
+        } else {
+            insert(table, id);
+        }
+
+        return id;
+    }
+
+    private void insert(int[] table, int id) {
+        int mask = table.length - 1;
+        int index = entries[id].hash & mask;
+        while (table[index] != 0) index = (index + 1) & mask;
+        table[index] = id + 1;
+    }
+
+    private static final class Entry {
+        final byte[] spelling;
+        final String name;
+        final int hash;
+
+        Entry(byte[] spelling, int hash) {
+            this.spelling = spelling;
+            this.name = new String(spelling, StandardCharsets.UTF_8);
+            this.hash = hash;
+        }
+
+        boolean matches(ByteBuffer source, int start, int length) {
+            if (spelling.length != length) return false;
+
+            for (int i = 0; i < length; i++) {
+                if (spelling[i] != source.get(start + i)) return false;
+            }
+
+            return true;
+        }
+    }
+}
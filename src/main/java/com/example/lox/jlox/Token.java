@@ -5,12 +5,21 @@ class Token {
     final String lexeme;
     final Object literal;
     final int line;
+    // Id of the name in SymbolTable.GLOBAL, or -1 if it has none. The
+    // Resolver gives every name that refers to a global one.
+    int symbol;
 
     Token(TokenType type, String lexeme, Object literal, int line) {
+        this(type, lexeme, literal, line, -1);
+    }
+
+    Token(TokenType type, String lexeme, Object literal, int line,
+          int symbol) {
         this.type = type;
         this.lexeme = lexeme;
         this.literal = literal;
         this.line = line;
+        this.symbol = symbol;
     }
 
     public String toString() {
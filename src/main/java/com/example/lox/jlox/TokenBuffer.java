@@ -0,0 +1,112 @@
+package com.example.lox.jlox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static com.example.lox.jlox.TokenType.*;
+
+/**
+ * Scanned tokens stored as parallel arrays of offsets into the source, so
+ * a script of any size costs a handful of arrays rather than an object
+ * and a string per token. {@link Token}s are only built for the few
+ * positions the parser actually keeps in the tree.
+ */
+final class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final ByteBuffer source;
+    private final SymbolTable symbols;
+
+    private int[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    // Symbol id for keywords and interned names, -1 for anything else.
+    private int[] symbolIds;
+    private int count = 0;
+
+    TokenBuffer(ByteBuffer source, SymbolTable symbols, int capacity) {
+        this.source = source;
+        this.symbols = symbols;
+        this.types = new int[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.lines = new int[capacity];
+        this.symbolIds = new int[capacity];
+    }
+
+    void add(TokenType type, int start, int length, int line, int symbol) {
+        if (count == types.length) {
+            int capacity = Math.max(8, count * 2);
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            symbolIds = Arrays.copyOf(symbolIds, capacity);
+        }
+
+        types[count] = type.ordinal();
+        starts[count] = start;
+        lengths[count] = length;
+        lines[count] = line;
+        symbolIds[count] = symbol;
+        count++;
+    }
+
+    /** Drops the first {@code n} tokens, shifting the rest down. */
+    void discard(int n) {
+        count -= n;
+        System.arraycopy(types, n, types, 0, count);
+        System.arraycopy(starts, n, starts, 0, count);
+        System.arraycopy(lengths, n, lengths, 0, count);
+        System.arraycopy(lines, n, lines, 0, count);
+        System.arraycopy(symbolIds, n, symbolIds, 0, count);
+    }
+
+    int size() {
+        return count;
+    }
+
+    TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    int line(int index) {
+        return lines[index];
+    }
+
+    String lexeme(int index) {
+        int symbol = symbolIds[index];
+        if (symbol >= 0) return symbols.name(symbol);
+
+        return text(starts[index], starts[index] + lengths[index]);
+    }
+
+    Object literal(int index) {
+        int start = starts[index];
+        int end = start + lengths[index];
+
+        switch (type(index)) {
+            case NUMBER:
+                return Numbers.parse(source, start, end);
+            case STRING:
+                // Trim the surrounding quotes.
+                return text(start + 1, end - 1);
+            default:
+                return null;
+        }
+    }
+
+    /** Materializes the token at the given position. */
+    Token token(int index) {
+        return new Token(type(index), lexeme(index), literal(index),
+                lines[index], symbolIds[index]);
+    }
+
+    private String text(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        source.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -14,26 +14,37 @@ public class GenerateAst {
         }
         String outputDir = args[0];
         defineAst(outputDir, "Expr", Arrays.asList(
-                "Assign   : Token name, Expr value",
-                "Binary   : Expr left, Token operator, Expr right",
-                "Call     : Expr callee, Token paren, List<Expr> arguments",
+                "Assign   : Token name, Expr value | int depth = -1, int slot, Binding binding",
+                "Binary   : Expr left, Token operator, Expr right | boolean numeric, boolean numericOperands, BinaryNode node = BinaryNode.UNINITIALIZED",
+                "Call     : Expr callee, Token paren, List<Expr> arguments | CallNode node = CallNode.UNINITIALIZED",
                 "Grouping : Expr expression",
                 "Literal  : Object value",
                 "Logical  : Expr left, Token operator, Expr right",
                 "Unary    : Token operator, Expr right",
-                "Variable : Token name"
+                "Variable : Token name | int depth = -1, int slot, Binding binding"
         ));
 
         defineAst(outputDir, "Stmt", Arrays.asList(
-                "Block      : List<Stmt> statements",
+                "Block      : List<Stmt> statements | int frameSize",
                 "Expression : Expr expression",
-                "Function   : Token name, List<Token> params, List<Stmt> body",
+                "Function   : Token name, List<Token> params, List<Stmt> body | int slot = -1, int frameSize, boolean hasClosures",
                 "If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
                 "Print      : Expr expression",
-                "Return     : Token keyword, Expr value",
-                "Var        : Token name, Expr initializer",
+                "Return     : Token keyword, Expr value | boolean tailCall",
+                "Var        : Token name, Expr initializer | int slot = -1",
                 "While      : Expr condition, Stmt body"
         ));
+
+        defineNodes(outputDir, "BinaryNode", Arrays.asList(
+                "AddDouble          : PLUS          : Double, Double : Numbers.box((double) left + (double) right)",
+                "AddString          : PLUS          : CharSequence, CharSequence : Interpreter.concatenate((CharSequence) left, (CharSequence) right)",
+                "GreaterDouble      : GREATER       : Double, Double : (double) left > (double) right",
+                "GreaterEqualDouble : GREATER_EQUAL : Double, Double : (double) left >= (double) right",
+                "LessDouble         : LESS          : Double, Double : (double) left < (double) right",
+                "LessEqualDouble    : LESS_EQUAL    : Double, Double : (double) left <= (double) right",
+                "EqualDouble        : EQUAL_EQUAL   : Double, Double : left.equals(right)",
+                "NotEqualDouble     : BANG_EQUAL    : Double, Double : !left.equals(right)"
+        ));
     }
 
     private static void defineAst(String outputDir, String baseName, List<String> types) throws IOException {
@@ -51,8 +62,9 @@ public class GenerateAst {
         // The AST classes.
         for (String type : types) {
             String className = type.split(":")[0].trim();
-            String fields = type.split(":")[1].trim();
-            defineType(writer, baseName, className, fields);
+            String[] fields = type.split(":")[1].split("\\|");
+            String annotations = fields.length > 1 ? fields[1].trim() : "";
+            defineType(writer, baseName, className, fields[0].trim(), annotations);
         }
 
         // The base accept() method.
@@ -63,6 +75,99 @@ public class GenerateAst {
         writer.close();
     }
 
+    /**
+     * Writes a family of self-specializing nodes for Expr.Binary. A site
+     * starts out uninitialized, picks the specialization matching the
+     * operator and the operand types it first sees, and rewrites itself to
+     * the generic node the first time a guard fails.
+     */
+    private static void defineNodes(String outputDir, String baseName, List<String> specializations) throws IOException {
+        String path = outputDir + "/" + baseName + ".java";
+        PrintWriter writer = new PrintWriter(path, StandardCharsets.UTF_8);
+
+        writer.println("package com.example.lox.jlox;");
+        writer.println();
+        writer.println("abstract class " + baseName + " {");
+        writer.println("    static final " + baseName + " UNINITIALIZED = new Uninitialized();");
+        writer.println("    static final " + baseName + " GENERIC = new Generic();");
+        for (String specialization : specializations) {
+            String className = specialization.split(":")[0].trim();
+            writer.println("    static final " + baseName + " " + constantName(className) +
+                           " = new " + className + "();");
+        }
+
+        writer.println();
+        writer.println("    abstract Object execute(Expr.Binary expr, Object left, Object right);");
+
+        // Picks the first specialization whose operator and guard match.
+        writer.println();
+        writer.println("    static " + baseName + " specialize(TokenType operator, Object left, Object right) {");
+        writer.println("        switch (operator) {");
+        String operator = null;
+        for (String specialization : specializations) {
+            String[] parts = specialization.split(":");
+            if (!parts[1].trim().equals(operator)) {
+                if (operator != null) writer.println("                break;");
+                operator = parts[1].trim();
+                writer.println("            case " + operator + ":");
+            }
+            writer.println("                if (" + guard(parts[2].trim()) + ") return " +
+                           constantName(parts[0].trim()) + ";");
+        }
+        if (operator != null) writer.println("                break;");
+        writer.println("        }");
+        writer.println();
+        writer.println("        return GENERIC;");
+        writer.println("    }");
+
+        writer.println();
+        writer.println("    static class Uninitialized extends " + baseName + " {");
+        writer.println("        @Override");
+        writer.println("        Object execute(Expr.Binary expr, Object left, Object right) {");
+        writer.println("            " + baseName + " node = specialize(expr.operator.type, left, right);");
+        writer.println("            expr.node = node;");
+        writer.println("            return node.execute(expr, left, right);");
+        writer.println("        }");
+        writer.println("    }");
+
+        writer.println();
+        writer.println("    static class Generic extends " + baseName + " {");
+        writer.println("        @Override");
+        writer.println("        Object execute(Expr.Binary expr, Object left, Object right) {");
+        writer.println("            return Interpreter.binary(expr.operator, left, right);");
+        writer.println("        }");
+        writer.println("    }");
+
+        for (String specialization : specializations) {
+            String[] parts = specialization.split(":");
+            writer.println();
+            writer.println("    static class " + parts[0].trim() + " extends " + baseName + " {");
+            writer.println("        @Override");
+            writer.println("        Object execute(Expr.Binary expr, Object left, Object right) {");
+            writer.println("            if (" + guard(parts[2].trim()) + ") {");
+            writer.println("                return " + parts[3].trim() + ";");
+            writer.println("            }");
+            writer.println();
+            writer.println("            // Type miss. Stop specializing this site.");
+            writer.println("            expr.node = GENERIC;");
+            writer.println("            return GENERIC.execute(expr, left, right);");
+            writer.println("        }");
+            writer.println("    }");
+        }
+
+        writer.println("}");
+        writer.close();
+    }
+
+    private static String guard(String operandTypes) {
+        String[] types = operandTypes.split(", ");
+        return "left instanceof " + types[0] + " && right instanceof " + types[1];
+    }
+
+    private static String constantName(String className) {
+        return className.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase();
+    }
+
     private static void defineVisitor(
             PrintWriter writer, String baseName, List<String> types) {
         writer.println("  interface Visitor<R> {");
@@ -76,7 +181,8 @@ public class GenerateAst {
         writer.println("  }");
     }
 
-    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList) {
+    private static void defineType(PrintWriter writer, String baseName, String className,
+                                   String fieldList, String annotationList) {
         writer.println("  static class " + className + " extends " + baseName + " {");
 
         // Constructor.
@@ -104,6 +210,13 @@ public class GenerateAst {
             writer.println("    final " + field + ";");
         }
 
+        // Mutable fields filled in by the passes that run after the parser.
+        if (!annotationList.isEmpty()) {
+            for (String annotation : annotationList.split(", ")) {
+                writer.println("    " + annotation + ";");
+            }
+        }
+
         writer.println("  }");
     }
 }
@@ -0,0 +1,54 @@
+package com.example.lox.jlox.vm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A flat sequence of bytecode with its constant pool and the source line
+ * of every byte, used for runtime error messages.
+ */
+public final class Chunk {
+    byte[] code = new byte[64];
+    int[] lines = new int[64];
+    Object[] constants = new Object[8];
+    // The global cell each name constant last resolved to, by index.
+    Global[] globalCache = new Global[8];
+    private int count = 0;
+    private int constantCount = 0;
+    private final Map<Object, Integer> constantIndexes = new HashMap<>();
+
+    public void write(byte value, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+
+        code[count] = value;
+        lines[count] = line;
+        count++;
+    }
+
+    public void patch(int offset, byte value) {
+        code[offset] = value;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int addConstant(Object value) {
+        // Numbers and strings are immutable, so equal values share a slot.
+        Integer existing = constantIndexes.get(value);
+        if (existing != null) return existing;
+
+        if (constantCount == constants.length) {
+            constants = Arrays.copyOf(constants, constantCount * 2);
+            globalCache = Arrays.copyOf(globalCache, constantCount * 2);
+        }
+
+        constants[constantCount] = value;
+        constantIndexes.put(value, constantCount);
+        return constantCount++;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.lox.jlox.vm;
+
+/**
+ * The compiled form of a Lox function: its bytecode plus what the VM needs
+ * to build a {@link Closure} around it at runtime.
+ */
+public final class CompiledFunction {
+    final String name;
+    final int arity;
+    final Chunk chunk = new Chunk();
+    int upvalueCount;
+    // Stack slots a call needs, counting the callee, arguments and locals.
+    int maxStack;
+
+    public CompiledFunction(String name, int arity) {
+        this.name = name;
+        this.arity = arity;
+    }
+
+    public Chunk chunk() {
+        return chunk;
+    }
+
+    public void setUpvalueCount(int upvalueCount) {
+        this.upvalueCount = upvalueCount;
+    }
+
+    public void setMaxStack(int maxStack) {
+        this.maxStack = maxStack;
+    }
+
+    @Override
+    public String toString() {
+        if (name == null) return "<script>";
+        return "<fn " + name + ">";
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.lox.jlox.vm;
+
+/**
+ * The storage cell for one global variable. Cells are never replaced once
+ * defined, so a chunk can cache the cell for a name and keep reading the
+ * current value through it.
+ */
+final class Global {
+    /** The VM whose globals the cell belongs to. */
+    final VM owner;
+    Object value;
+
+    Global(VM owner, Object value) {
+        this.owner = owner;
+        this.value = value;
+    }
+}
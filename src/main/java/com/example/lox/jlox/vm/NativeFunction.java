@@ -0,0 +1,20 @@
+package com.example.lox.jlox.vm;
+
+final class NativeFunction {
+    final int arity;
+    final Body body;
+
+    NativeFunction(int arity, Body body) {
+        this.arity = arity;
+        this.body = body;
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+
+    interface Body {
+        Object call(Object[] stack, int args);
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.lox.jlox.vm;
+
+/**
+ * A variable captured by a closure. While the variable is still live on
+ * the VM stack the upvalue points at its slot; once the slot is popped the
+ * value is moved into {@link #closed}.
+ */
+final class Upvalue {
+    int slot;
+    Object closed;
+    Upvalue next;
+
+    Upvalue(int slot, Upvalue next) {
+        this.slot = slot;
+        this.next = next;
+    }
+
+    boolean isOpen() {
+        return slot >= 0;
+    }
+}
@@ -0,0 +1,497 @@
+package com.example.lox.jlox.vm;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stack-based virtual machine that runs the bytecode produced by the
+ * compiler. Globals persist across calls to {@link #interpret}, so a single
+ * instance can back the REPL.
+ * <p>
+ * Lox calls never recurse on the Java stack. Call frames and the value
+ * stack are arrays on the heap that start small and grow as calls nest,
+ * up to a maximum call depth. The compiler records how many stack slots
+ * each function can use, so the stack only needs checking when a call
+ * begins.
+ */
+public final class VM {
+    /** The call depth allowed unless another is given. */
+    public static final int DEFAULT_MAX_DEPTH = 1024;
+    private static final int INITIAL_FRAMES = 8;
+    private static final int INITIAL_STACK_SLOTS = 2048;
+
+    private final int maxDepth;
+    private final PrintStream out;
+    private Object[] stack = new Object[INITIAL_STACK_SLOTS];
+    private Frame[] frames = new Frame[INITIAL_FRAMES];
+    private int frameCount = 0;
+    private final Map<String, Global> globals = new HashMap<>();
+    private Upvalue openUpvalues;
+
+    public VM() {
+        this(DEFAULT_MAX_DEPTH);
+    }
+
+    public VM(int maxDepth) {
+        this(maxDepth, System.out);
+    }
+
+    /** Creates a VM whose print statements write to the given stream. */
+    public VM(int maxDepth, PrintStream out) {
+        this.maxDepth = maxDepth;
+        this.out = out;
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new Frame();
+        }
+
+        defineGlobal("clock", new NativeFunction(0, (stack, args) ->
+                (double) System.currentTimeMillis() / 1000.0));
+    }
+
+    public void interpret(CompiledFunction script) {
+        if (script.maxStack > stack.length) growStack(script.maxStack);
+        stack[0] = new Closure(script);
+        Frame frame = frames[frameCount++];
+        frame.closure = (Closure) stack[0];
+        frame.ip = 0;
+        frame.base = 0;
+
+        try {
+            run();
+        } catch (VmError error) {
+            resetStack();
+            throw error;
+        }
+    }
+
+    private void run() {
+        Object[] stack = this.stack;
+        Frame frame = frames[frameCount - 1];
+        Closure closure = frame.closure;
+        byte[] code = closure.function.chunk.code;
+        Object[] constants = closure.function.chunk.constants;
+        Global[] globalCache = closure.function.chunk.globalCache;
+        int ip = frame.ip;
+        int base = frame.base;
+        int sp = base + 1;
+
+        for (; ; ) {
+            switch (code[ip++]) {
+                case OpCode.CONSTANT: {
+                    int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    stack[sp++] = constants[index];
+                    break;
+                }
+                case OpCode.NIL:
+                    stack[sp++] = null;
+                    break;
+                case OpCode.TRUE:
+                    stack[sp++] = true;
+                    break;
+                case OpCode.FALSE:
+                    stack[sp++] = false;
+                    break;
+                case OpCode.POP:
+                    sp--;
+                    break;
+                case OpCode.GET_LOCAL:
+                    stack[sp] = stack[base + (code[ip++] & 0xff)];
+                    sp++;
+                    break;
+                case OpCode.SET_LOCAL:
+                    stack[base + (code[ip++] & 0xff)] = stack[sp - 1];
+                    break;
+                case OpCode.GET_GLOBAL: {
+                    int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    Global global = globalCache[index];
+                    if (global == null || global.owner != this) {
+                        global = lookUpGlobal(frame, ip, constants[index]);
+                        globalCache[index] = global;
+                    }
+                    stack[sp++] = global.value;
+                    break;
+                }
+                case OpCode.DEFINE_GLOBAL: {
+                    int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    defineGlobal((String) constants[index], stack[--sp]);
+                    break;
+                }
+                case OpCode.SET_GLOBAL: {
+                    int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    Global global = globalCache[index];
+                    if (global == null || global.owner != this) {
+                        global = lookUpGlobal(frame, ip, constants[index]);
+                        globalCache[index] = global;
+                    }
+                    global.value = stack[sp - 1];
+                    break;
+                }
+                case OpCode.GET_UPVALUE: {
+                    Upvalue upvalue = closure.upvalues[code[ip++] & 0xff];
+                    stack[sp++] = upvalue.isOpen()
+                            ? stack[upvalue.slot] : upvalue.closed;
+                    break;
+                }
+                case OpCode.SET_UPVALUE: {
+                    Upvalue upvalue = closure.upvalues[code[ip++] & 0xff];
+                    if (upvalue.isOpen()) {
+                        stack[upvalue.slot] = stack[sp - 1];
+                    } else {
+                        upvalue.closed = stack[sp - 1];
+                    }
+                    break;
+                }
+                case OpCode.EQUAL:
+                    stack[sp - 2] = isEqual(stack[sp - 2], stack[sp - 1]);
+                    sp--;
+                    break;
+                case OpCode.NOT_EQUAL:
+                    stack[sp - 2] = !isEqual(stack[sp - 2], stack[sp - 1]);
+                    sp--;
+                    break;
+                case OpCode.GREATER: {
+                    Object a = stack[sp - 2];
+                    Object b = stack[sp - 1];
+                    if (!(a instanceof Double && b instanceof Double)) {
+                        throw error(frame, ip, "Operands must be numbers.");
+                    }
+                    stack[sp - 2] = (double) a > (double) b;
+                    sp--;
+                    break;
+                }
+                case OpCode.GREATER_EQUAL: {
+                    Object a = stack[sp - 2];
+                    Object b = stack[sp - 1];
+                    if (!(a instanceof Double && b instanceof Double)) {
+                        throw error(frame, ip, "Operands must be numbers.");
+                    }
+                    stack[sp - 2] = (double) a >= (double) b;
+                    sp--;
+                    break;
+                }
+                case OpCode.LESS: {
+                    Object a = stack[sp - 2];
+                    Object b = stack[sp - 1];
+                    if (!(a instanceof Double && b instanceof Double)) {
+                        throw error(frame, ip, "Operands must be numbers.");
+                    }
+                    stack[sp - 2] = (double) a < (double) b;
+                    sp--;
+                    break;
+                }
+                case OpCode.LESS_EQUAL: {
+                    Object a = stack[sp - 2];
+                    Object b = stack[sp - 1];
+                    if (!(a instanceof Double && b instanceof Double)) {
+                        throw error(frame, ip, "Operands must be numbers.");
+                    }
+                    stack[sp - 2] = (double) a <= (double) b;
+                    sp--;
+                    break;
+                }
+                case OpCode.ADD: {
+                    Object a = stack[sp - 2];
+                    Object b = stack[sp - 1];
+                    if (a instanceof Double && b instanceof Double) {
+                        stack[sp - 2] = (double) a + (double) b;
+                    } else if (a instanceof String && b instanceof String) {
+                        stack[sp - 2] = (String) a + b;
+                    } else {
+                        throw error(frame, ip,
+                                "Operands must be two numbers or two strings.");
+                    }
+                    sp--;
+                    break;
+                }
+                case OpCode.SUBTRACT: {
+                    Object a = stack[sp - 2];
+                    Object b = stack[sp - 1];
+                    if (!(a instanceof Double && b instanceof Double)) {
+                        throw error(frame, ip, "Operands must be numbers.");
+                    }
+                    stack[sp - 2] = (double) a - (double) b;
+                    sp--;
+                    break;
+                }
+                case OpCode.MULTIPLY: {
+                    Object a = stack[sp - 2];
+                    Object b = stack[sp - 1];
+                    if (!(a instanceof Double && b instanceof Double)) {
+                        throw error(frame, ip, "Operands must be numbers.");
+                    }
+                    stack[sp - 2] = (double) a * (double) b;
+                    sp--;
+                    break;
+                }
+                case OpCode.DIVIDE: {
+                    Object a = stack[sp - 2];
+                    Object b = stack[sp - 1];
+                    if (!(a instanceof Double && b instanceof Double)) {
+                        throw error(frame, ip, "Operands must be numbers.");
+                    }
+                    stack[sp - 2] = (double) a / (double) b;
+                    sp--;
+                    break;
+                }
+                case OpCode.NOT:
+                    stack[sp - 1] = isFalsey(stack[sp - 1]);
+                    break;
+                case OpCode.NEGATE: {
+                    Object value = stack[sp - 1];
+                    if (!(value instanceof Double)) {
+                        throw error(frame, ip, "Operand must be a number.");
+                    }
+                    stack[sp - 1] = -(double) value;
+                    break;
+                }
+                case OpCode.PRINT:
+                    out.println(stringify(stack[--sp]));
+                    break;
+                case OpCode.JUMP: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2 + offset;
+                    break;
+                }
+                case OpCode.JUMP_IF_FALSE: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    if (isFalsey(stack[sp - 1])) ip += offset;
+                    break;
+                }
+                case OpCode.LOOP: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2 - offset;
+                    break;
+                }
+                case OpCode.TAIL_CALL:
+                case OpCode.CALL: {
+                    // Only a closure can take over the returning frame; a
+                    // tail call to anything else is an ordinary call.
+                    boolean tail = code[ip - 1] == OpCode.TAIL_CALL;
+                    int argCount = code[ip++] & 0xff;
+                    Object callee = stack[sp - argCount - 1];
+
+                    if (callee instanceof Closure) {
+                        Closure function = (Closure) callee;
+                        checkArity(frame, ip, function.function.arity, argCount);
+
+                        if (tail) {
+                            if (base + function.function.maxStack > stack.length) {
+                                stack = growStack(base + function.function.maxStack);
+                            }
+
+                            // Slide the callee and its arguments down over the
+                            // returning frame and run it there.
+                            closeUpvalues(base);
+                            System.arraycopy(stack, sp - argCount - 1,
+                                    stack, base, argCount + 1);
+                            Arrays.fill(stack, base + argCount + 1, sp, null);
+                            sp = base + argCount + 1;
+
+                            frame.closure = function;
+                            closure = function;
+                            code = closure.function.chunk.code;
+                            constants = closure.function.chunk.constants;
+                            globalCache = closure.function.chunk.globalCache;
+                            ip = 0;
+                            break;
+                        }
+
+                        // The script's own frame is not a call.
+                        if (frameCount > maxDepth) {
+                            throw error(frame, ip, "Stack overflow.");
+                        }
+                        if (frameCount == frames.length) growFrames();
+                        int top = sp - argCount - 1 + function.function.maxStack;
+                        if (top > stack.length) stack = growStack(top);
+
+                        frame.ip = ip;
+                        frame = frames[frameCount++];
+                        frame.closure = function;
+                        frame.base = sp - argCount - 1;
+
+                        closure = function;
+                        code = closure.function.chunk.code;
+                        constants = closure.function.chunk.constants;
+                        globalCache = closure.function.chunk.globalCache;
+                        ip = 0;
+                        base = frame.base;
+                    } else if (callee instanceof NativeFunction) {
+                        NativeFunction function = (NativeFunction) callee;
+                        checkArity(frame, ip, function.arity, argCount);
+
+                        Object result = function.body.call(stack, sp - argCount);
+                        sp -= argCount + 1;
+                        stack[sp++] = result;
+                    } else {
+                        throw error(frame, ip,
+                                "Can only call functions and classes.");
+                    }
+                    break;
+                }
+                case OpCode.CLOSURE: {
+                    int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    Closure created = new Closure((CompiledFunction) constants[index]);
+                    for (int i = 0; i < created.upvalues.length; i++) {
+                        boolean isLocal = code[ip++] == 1;
+                        int slot = code[ip++] & 0xff;
+                        created.upvalues[i] = isLocal
+                                ? captureUpvalue(base + slot)
+                                : closure.upvalues[slot];
+                    }
+                    stack[sp++] = created;
+                    break;
+                }
+                case OpCode.CLOSE_UPVALUE:
+                    closeUpvalues(sp - 1);
+                    sp--;
+                    break;
+                case OpCode.RETURN: {
+                    Object result = stack[--sp];
+                    closeUpvalues(base);
+                    frameCount--;
+                    if (frameCount == 0) {
+                        Arrays.fill(stack, 0, sp, null);
+                        return;
+                    }
+
+                    sp = base;
+                    stack[sp++] = result;
+
+                    frame = frames[frameCount - 1];
+                    closure = frame.closure;
+                    code = closure.function.chunk.code;
+                    constants = closure.function.chunk.constants;
+                    globalCache = closure.function.chunk.globalCache;
+                    ip = frame.ip;
+                    base = frame.base;
+                    break;
+                }
+                default:
+                    throw error(frame, ip, "Unknown opcode.");
+            }
+        }
+    }
+
+    private void defineGlobal(String name, Object value) {
+        Global global = globals.get(name);
+        if (global != null) {
+            // Update in place so cached cells see the new value.
+            global.value = value;
+        } else {
+            globals.put(name, new Global(this, value));
+        }
+    }
+
+    private Global lookUpGlobal(Frame frame, int ip, Object name) {
+        Global global = globals.get(name);
+        if (global == null) {
+            throw error(frame, ip, "Undefined variable '" + name + "'.");
+        }
+
+        return global;
+    }
+
+    private void growFrames() {
+        int count = frames.length;
+        frames = Arrays.copyOf(frames, Math.min(count * 2, maxDepth + 1));
+        for (int i = count; i < frames.length; i++) {
+            frames[i] = new Frame();
+        }
+    }
+
+    private Object[] growStack(int slots) {
+        int length = stack.length;
+        while (length < slots) length *= 2;
+        stack = Arrays.copyOf(stack, length);
+        return stack;
+    }
+
+    private void checkArity(Frame frame, int ip, int arity, int argCount) {
+        if (argCount != arity) {
+            throw error(frame, ip, "Expected %d arguments but got %s."
+                    .formatted(arity, argCount));
+        }
+    }
+
+    private Upvalue captureUpvalue(int slot) {
+        Upvalue previous = null;
+        Upvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.slot > slot) {
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+
+        if (upvalue != null && upvalue.slot == slot) return upvalue;
+
+        Upvalue created = new Upvalue(slot, upvalue);
+        if (previous == null) {
+            openUpvalues = created;
+        } else {
+            previous.next = created;
+        }
+        return created;
+    }
+
+    private void closeUpvalues(int last) {
+        while (openUpvalues != null && openUpvalues.slot >= last) {
+            Upvalue upvalue = openUpvalues;
+            upvalue.closed = stack[upvalue.slot];
+            upvalue.slot = -1;
+            openUpvalues = upvalue.next;
+        }
+    }
+
+    private VmError error(Frame frame, int ip, String message) {
+        return new VmError(message,
+                frame.closure.function.chunk.lines[ip - 1]);
+    }
+
+    private void resetStack() {
+        Arrays.fill(stack, null);
+        frameCount = 0;
+        openUpvalues = null;
+    }
+
+    private static boolean isFalsey(Object object) {
+        if (object == null) return true;
+        if (object instanceof Boolean) return !(boolean) object;
+        return false;
+    }
+
+    private static boolean isEqual(Object a, Object b) {
+        // nil is only equal to nil.
+        if (a == null && b == null) return true;
+        if (a == null) return false;
+
+        return a.equals(b);
+    }
+
+    private static String stringify(Object object) {
+        if (object == null) return "nil";
+
+        // Hack. Work around Java adding ".0" to integer-valued doubles.
+        if (object instanceof Double) {
+            String text = object.toString();
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+            return text;
+        }
+
+        return object.toString();
+    }
+
+    private static final class Frame {
+        Closure closure;
+        int ip;
+        int base;
+    }
+}
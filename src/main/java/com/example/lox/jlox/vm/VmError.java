@@ -0,0 +1,14 @@
+package com.example.lox.jlox.vm;
+
+/**
+ * A runtime error raised by the {@link VM}, carrying the source line of
+ * the instruction that failed.
+ */
+public final class VmError extends RuntimeException {
+    public final int line;
+
+    VmError(String message, int line) {
+        super(message);
+        this.line = line;
+    }
+}
@@ -1,3 +1,5 @@
 module com.example.lox.jlox {
+    requires java.management;
+
     exports com.example.lox.jlox;
 }
@@ -0,0 +1,41 @@
+package com.example.lox.jlox;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CallDepthTest {
+    private static final String DEPTH =
+            "fun d(n) { if (n == 0) return 0; return 1 + d(n - 1); }\n";
+
+    @Test
+    public void bothEnginesAllowTheSameNumberOfCalls() {
+        String fits = DEPTH + "print d(4);\n";
+        String overflows = DEPTH + "print d(5);\n";
+
+        assertEquals("4\n", Scripts.interpret(fits, 5));
+        assertEquals("4\n", Scripts.runOnVm(fits, 5));
+        assertEquals("1: Stack overflow.\n", Scripts.interpret(overflows, 5));
+        assertEquals("1: Stack overflow.\n", Scripts.runOnVm(overflows, 5));
+    }
+
+    @Test
+    public void vmStackGrowsForDeeplyNestedTemporaries() {
+        String call = "g(1, ".repeat(1100) + "1" + ")".repeat(1100);
+        String source = "fun g(a, b) { return a + b; }\n" +
+                "print " + call + ";\n" +
+                "fun h() { var x = 0; return " + call + "; }\n" +
+                "print h();\n";
+
+        assertEquals("1101\n1101\n", Scripts.runOnVm(source));
+    }
+
+    @Test
+    public void spawnedTasksHaveRoomForTheFullCallDepth() {
+        String source = DEPTH +
+                "fun run() { return d(1000); }\n" +
+                "print join(spawn(run));\n";
+
+        assertEquals("1000\n", Scripts.interpret(source));
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.lox.jlox;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class InterpreterTest {
+    @Test
+    public void comparesArithmeticUnboxedWithTheUsualSemantics() {
+        // Each comparison is made once with arithmetic operands, which are
+        // compared unboxed, and once with variables, which are not.
+        String[][] cases = {
+                {"1 + 2", "<", "4"},
+                {"2 * 2", "<=", "4"},
+                {"1 - 2", ">", "0 - 3"},
+                {"2 / 2", ">=", "1"},
+                {"0 * -1", "==", "0"},
+                {"0 / 0", "==", "0 / 0"},
+                {"0 * -1", "!=", "0 * 1"},
+                {"1 + 1", "==", "\"2\""},
+                {"1 + 1", "!=", "nil"},
+                {"1 + 1", "==", "true"},
+        };
+
+        for (String[] c : cases) {
+            String unboxed = "print " + c[0] + " " + c[1] + " " + c[2] + ";";
+            String boxed = "var a = " + c[0] + "; var b = " + c[2] + ";\n" +
+                    "print a " + c[1] + " b;";
+            assertEquals(unboxed, Scripts.interpret(boxed),
+                    Scripts.interpret(unboxed));
+        }
+
+        assertEquals("true\nfalse\ntrue\ntrue\nfalse\ntrue\n",
+                Scripts.interpret("print 1 + 2 < 4;\n" +
+                        "print 0 * -1 == 0;\n" +
+                        "print 0 / 0 == 0 / 0;\n" +
+                        "print 1 + 1 != nil;\n" +
+                        "print 1 + 1 == \"2\";\n" +
+                        "print 3 - 1 == 2;\n"));
+    }
+
+    @Test
+    public void rejectsOrderingANumberAgainstSomethingElse() {
+        assertEquals("1: Operands must be numbers.\n",
+                Scripts.interpret("print 1 + 1 < \"a\";"));
+        assertEquals("1: Operands must be numbers.\n",
+                Scripts.interpret("print nil >= 2 * 3;"));
+    }
+
+    @Test
+    public void reusedFramesStartEmptyAndCapturedOnesAreKept() {
+        String source =
+                "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n" +
+                "fun fresh(n) { var x; print x; x = n; }\n" +
+                "fun counter(n) {\n" +
+                "  fun next() { n = n + 1; return n; }\n" +
+                "  return next;\n" +
+                "}\n" +
+                "print fib(15);\n" +
+                "fresh(1); fresh(2);\n" +
+                "var a = counter(10); var b = counter(20);\n" +
+                "fib(5);\n" +
+                "print a(); print b(); print a();\n";
+
+        assertEquals("610\nnil\nnil\n11\n21\n12\n", Scripts.interpret(source));
+    }
+
+    @Test
+    public void framePoolHandsBackClearedFramesOfTheRightSize() {
+        FramePool pool = new FramePool();
+        Object[] frame = pool.acquire(3);
+        frame[0] = "value";
+        pool.release(frame);
+
+        assertSame(frame, pool.acquire(3));
+        assertNull(frame[0]);
+        assertNotSame(frame, pool.acquire(3));
+        assertEquals(4, pool.acquire(4).length);
+    }
+
+    @Test
+    public void refusedCallsDoNotKeepPooledFrames() {
+        StringBuilder errors = new StringBuilder();
+        ErrorReporter reporter = new ErrorReporter(new ErrorSink() {
+            @Override
+            public void compileError(int line, String where, String message) {
+                errors.append(message).append('\n');
+            }
+
+            @Override
+            public void runtimeError(int line, String message) {
+                errors.append(message).append('\n');
+            }
+        });
+        Interpreter interpreter = new Interpreter(reporter,
+                new PrintStream(new ByteArrayOutputStream()));
+        interpreter.maxCallDepth = 3;
+
+        interpreter.interpret(Scripts.optimize(
+                "fun f(a) { return a; }\n" +
+                "fun down(n) { return 1 + down(n); }\n" +
+                "f(1);\n"));
+        assertEquals(1, interpreter.frames.spare(1));
+
+        interpreter.interpret(Scripts.optimize("f(1, 2);"));
+        interpreter.interpret(Scripts.optimize("var g = 1; g(f(1));"));
+        assertEquals(1, interpreter.frames.spare(1));
+
+        // The calls that were made keep their frames, the refused one not.
+        interpreter.interpret(Scripts.optimize("down(0);"));
+        assertEquals(1, interpreter.frames.spare(1));
+
+        assertEquals("Expected 1 arguments but got 2.\n" +
+                "Can only call functions and classes.\n" +
+                "Stack overflow.\n", errors.toString());
+    }
+}
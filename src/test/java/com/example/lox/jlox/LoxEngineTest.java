@@ -0,0 +1,112 @@
+package com.example.lox.jlox;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LoxEngineTest {
+    private final List<String> errors =
+            Collections.synchronizedList(new ArrayList<>());
+
+    private final ErrorSink sink = new ErrorSink() {
+        @Override
+        public void compileError(int line, String where, String message) {
+            errors.add(line + " " + where + ": " + message);
+        }
+
+        @Override
+        public void runtimeError(int line, String message) {
+            errors.add(line + ": " + message);
+        }
+    };
+
+    @Test
+    public void runsOneProgramInParallelWithSeparateGlobals() throws Exception {
+        try (LoxEngine engine = new LoxEngine(4)) {
+            LoxProgram program = engine.compile(
+                    "var count = 0;\n" +
+                    "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n" +
+                    "for (var i = 0; i < 10; i = i + 1) count = count + 1;\n" +
+                    "print count;\n" +
+                    "print fib(20);\n", sink);
+
+            List<ByteArrayOutputStream> outputs = new ArrayList<>();
+            List<CompletableFuture<Boolean>> runs = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                outputs.add(output);
+                runs.add(engine.submit(program, new PrintStream(output), sink));
+            }
+
+            for (int i = 0; i < runs.size(); i++) {
+                assertTrue(runs.get(i).get());
+                assertEquals("10\n6765\n",
+                        outputs.get(i).toString(StandardCharsets.UTF_8));
+            }
+        }
+
+        assertEquals(List.of(), errors);
+    }
+
+    @Test
+    public void reportsCompileErrorsToTheSink() {
+        try (LoxEngine engine = new LoxEngine(1)) {
+            assertNull(engine.compile("print ;", sink));
+        }
+
+        assertEquals(List.of("1 at ';': Expect expression."), errors);
+    }
+
+    @Test
+    public void reportsRuntimeErrorsToTheSink() {
+        try (LoxEngine engine = new LoxEngine(1)) {
+            LoxProgram program = engine.compile("print 1;\nprint nope;", sink);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+            assertFalse(engine.run(program, new PrintStream(output), sink));
+            assertEquals("1\n", output.toString(StandardCharsets.UTF_8));
+        }
+
+        assertEquals(List.of("2: Undefined variable 'nope'."), errors);
+    }
+
+    @Test
+    public void reportsRunawayRecursionAsAStackOverflow() throws Exception {
+        try (LoxEngine engine = new LoxEngine(1)) {
+            LoxProgram program = engine.compile(
+                    "fun r(n) { return 1 + r(n + 1); }\nr(0);", sink);
+            PrintStream output = new PrintStream(new ByteArrayOutputStream());
+
+            assertFalse(engine.submit(program, output, sink).get());
+        }
+
+        assertEquals(List.of("1: Stack overflow."), errors);
+    }
+
+    @Test
+    public void closeWaitsForSubmittedRuns() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (LoxEngine engine = new LoxEngine(1)) {
+            LoxProgram program = engine.compile(
+                    "var n = 0;\n" +
+                    "for (var i = 0; i < 100000; i = i + 1) n = n + 1;\n" +
+                    "print n;\n", sink);
+            engine.submit(program, new PrintStream(output), sink);
+            engine.submit(program, new PrintStream(output), sink);
+        }
+
+        assertEquals("100000\n100000\n", output.toString(StandardCharsets.UTF_8));
+        assertTrue(errors.isEmpty());
+    }
+}
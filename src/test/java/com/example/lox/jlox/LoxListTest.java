@@ -0,0 +1,74 @@
+package com.example.lox.jlox;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LoxListTest {
+    @Test
+    public void nativesStoreNumbersAndThenOtherValues() {
+        String source =
+                "var xs = list();\n" +
+                "push(xs, 1); push(xs, 2.5);\n" +
+                "set(xs, 0, get(xs, 0) + get(xs, 1));\n" +
+                "print xs;\n" +
+                "push(xs, \"three\");\n" +
+                "print len(xs);\n" +
+                "print xs;\n" +
+                "get(xs, 3);\n";
+
+        assertEquals("[3.5, 2.5]\n3\n[3.5, 2.5, three]\n" +
+                "8: List index out of range.\n", Scripts.interpret(source));
+    }
+
+    @Test
+    public void nativesRejectBadIndexesAndOperands() {
+        assertEquals("1: List index must be an integer.\n",
+                Scripts.interpret("var xs = list(); push(xs, 1); get(xs, 0.5);"));
+        assertEquals("1: List index out of range.\n",
+                Scripts.interpret("var xs = list(); set(xs, -1, 1);"));
+        assertEquals("1: Operand must be a list.\n",
+                Scripts.interpret("len(\"abc\");"));
+    }
+
+    @Test
+    public void keepsNumbersUnboxedUntilSomethingElseIsStored() {
+        LoxList list = new LoxList();
+        for (int i = 0; i < 20; i++) list.add((double) i);
+        assertTrue(list.holdsOnlyNumbers());
+
+        list.set(3, 0.5);
+        assertTrue(list.holdsOnlyNumbers());
+
+        list.set(4, "four");
+        assertFalse(list.holdsOnlyNumbers());
+        assertEquals(20, list.size());
+        assertEquals(0.5, list.get(3));
+        assertEquals("four", list.get(4));
+        assertEquals(19.0, list.get(19));
+
+        // Numbers stored afterwards stay boxed.
+        list.add(20.0);
+        list.add(null);
+        assertFalse(list.holdsOnlyNumbers());
+        assertEquals(20.0, list.get(20));
+        assertNull(list.get(21));
+    }
+
+    @Test
+    public void printsLikeThePrintStatement() {
+        LoxList list = new LoxList();
+        list.add(1.0);
+        list.add(-0.0);
+        list.add(1.5);
+        assertEquals("[1, -0, 1.5]", list.toString());
+
+        list.add(null);
+        list.add(true);
+        list.add("text");
+        assertEquals("[1, -0, 1.5, nil, true, text]", list.toString());
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.lox.jlox;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LoxMapTest {
+    @Test
+    public void nativesCountStringAndNumberKeys() {
+        String source =
+                "var counts = map();\n" +
+                "var words = list();\n" +
+                "push(words, \"a\"); push(words, \"b\"); push(words, \"a\");\n" +
+                "for (var i = 0; i < len(words); i = i + 1) {\n" +
+                "  var word = get(words, i);\n" +
+                "  if (has(counts, word)) put(counts, word, lookup(counts, word) + 1);\n" +
+                "  else put(counts, word, 1);\n" +
+                "}\n" +
+                "put(counts, 7, nil);\n" +
+                "print lookup(counts, \"a\");\n" +
+                "print has(counts, 7);\n" +
+                "print remove(counts, \"b\");\n" +
+                "print len(keys(counts));\n" +
+                "put(counts, true, 1);\n";
+
+        assertEquals("2\ntrue\n1\n2\n" +
+                "14: Map key must be a string or number.\n",
+                Scripts.interpret(source));
+    }
+
+    @Test
+    public void stringKeysBuiltByConcatenationMatchLiterals() {
+        String source =
+                "var m = map();\n" +
+                "var key = \"\";\n" +
+                "for (var i = 0; i < 300; i = i + 1) key = key + \"k\";\n" +
+                "put(m, key, 1);\n" +
+                "var same = \"\";\n" +
+                "for (var i = 0; i < 300; i = i + 1) same = same + \"k\";\n" +
+                "print lookup(m, same);\n";
+
+        assertEquals("1\n", Scripts.interpret(source));
+    }
+
+    @Test
+    public void numberKeysCompareLikeEquality() {
+        LoxMap map = new LoxMap();
+        map.put(0.0, "zero");
+        map.put(Double.NaN, "nan");
+
+        assertFalse(map.containsKey(-0.0));
+        assertEquals("nan", map.get(Double.NaN));
+        assertFalse(map.containsKey("0"));
+    }
+
+    @Test
+    public void agreesWithHashMapThroughGrowingAndRemoving() {
+        LoxMap map = new LoxMap();
+        Map<Object, Object> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            // A small key space, so keys are often found, replaced and
+            // removed, and runs of collisions form and break up.
+            int n = random.nextInt(2000);
+            Object key = random.nextBoolean() ? (Object) (double) n : "k" + n;
+
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                map.put(key, i);
+                expected.put(key, i);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Object, Object> entry : expected.entrySet()) {
+            assertTrue(map.containsKey(entry.getKey()));
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+
+        Set<Object> keys = new HashSet<>();
+        LoxList list = map.keys();
+        for (int i = 0; i < list.size(); i++) keys.add(list.get(i));
+        assertEquals(expected.keySet(), keys);
+
+        for (Object key : expected.keySet()) map.remove(key);
+        assertEquals(0, map.size());
+        assertNull(map.get("k1"));
+        assertEquals("{}", map.toString());
+    }
+
+    @Test
+    public void printsCollectionsThatContainThemselves() {
+        String source =
+                "var a = list(); var m = map();\n" +
+                "push(a, m); put(m, 1, a);\n" +
+                "print a;\n" +
+                "print m;\n" +
+                "var b = list(); push(b, b); push(b, a); push(b, a);\n" +
+                "print b;\n";
+
+        assertEquals("[{1: [...]}]\n{1: [{...}]}\n" +
+                "[[...], [{1: [...]}], [{1: [...]}]]\n",
+                Scripts.interpret(source));
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.lox.jlox;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LoxStringTest {
+    @Test
+    public void joinsShortStringsAndKeepsLongOnesApart() {
+        CharSequence empty = "";
+        CharSequence word = "word";
+        assertSame(word, LoxString.concat(empty, word));
+        assertSame(word, LoxString.concat(word, empty));
+        assertEquals(String.class, LoxString.concat("a", "b").getClass());
+
+        String half = "x".repeat(200);
+        CharSequence rope = LoxString.concat(half, half);
+        assertTrue(rope instanceof LoxString);
+        assertEquals(400, rope.length());
+        assertEquals(half + half, rope.toString());
+    }
+
+    @Test
+    public void agreesWithStringBuilderForAnyShapeOfRope() {
+        Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            CharSequence rope = "";
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < 200; i++) {
+                String piece = "p" + random.nextInt(1000) + "é";
+                // Grow at either end so ropes nest both ways.
+                if (random.nextBoolean()) {
+                    rope = LoxString.concat(rope, piece);
+                    expected.append(piece);
+                } else {
+                    rope = LoxString.concat(piece, rope);
+                    expected.insert(0, piece);
+                }
+            }
+
+            assertEquals(expected.length(), rope.length());
+            int index = random.nextInt(rope.length());
+            assertEquals(expected.charAt(index), rope.charAt(index));
+            assertEquals(expected.substring(index / 2, index),
+                    rope.subSequence(index / 2, index).toString());
+            assertEquals(expected.toString(), rope.toString());
+        }
+    }
+
+    @Test
+    public void flattensDeepAndSharedRopes() {
+        String piece = "y".repeat(300);
+        CharSequence rope = piece;
+        for (int i = 0; i < 100_000; i++) rope = LoxString.concat(rope, "z");
+        assertEquals(300 + 100_000, rope.toString().length());
+
+        // A rope used twice, one half already flattened.
+        CharSequence shared = LoxString.concat(piece, piece);
+        CharSequence both = LoxString.concat(shared, shared);
+        assertEquals(piece.repeat(2), shared.toString());
+        assertEquals(piece.repeat(4), both.toString());
+        assertSame(both.toString(), both.toString());
+    }
+
+    @Test
+    public void comparesContentsRegardlessOfShape() {
+        String half = "q".repeat(300);
+        CharSequence rope = LoxString.concat(half, half);
+        CharSequence other = LoxString.concat(half + "q", half.substring(1));
+
+        assertTrue(LoxString.contentEquals(rope, half + half));
+        assertTrue(LoxString.contentEquals(rope, other));
+        assertFalse(LoxString.contentEquals(rope, half));
+        assertFalse(LoxString.contentEquals(rope, half + "r" + half.substring(1)));
+    }
+
+    @Test
+    public void scriptsSeeRopesAsOrdinaryStrings() {
+        String source =
+                "var s = \"\";\n" +
+                "for (var i = 0; i < 1000; i = i + 1) s = s + \"ab\";\n" +
+                "var t = \"\";\n" +
+                "for (var i = 0; i < 1000; i = i + 1) t = t + \"a\" + \"b\";\n" +
+                "print s == t;\n" +
+                "print s == t + \"c\";\n" +
+                "var m = map(); put(m, s, 1); print lookup(m, t);\n" +
+                "var short = \"\";\n" +
+                "for (var i = 0; i < 3; i = i + 1) short = short + i;\n";
+
+        assertEquals("true\nfalse\n1\n9: Operands must be two numbers or two strings.\n",
+                Scripts.interpret(source));
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.lox.jlox;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LoxTaskTest {
+    @Test
+    public void reportsFailuresOfTasksNobodyJoined() {
+        String source =
+                "fun f() { print \"in task\"; return nil + 1; }\n" +
+                "spawn(f);\n" +
+                "print \"done\";\n";
+
+        String result = Scripts.interpret(source);
+        assertTrue(result, result.contains("in task\n"));
+        assertTrue(result, result.contains("done\n"));
+        assertTrue(result, result.endsWith(
+                "1: Operands must be two numbers or two strings.\n"));
+    }
+
+    @Test
+    public void reportsAJoinedFailureOnlyWhereItWasJoined() {
+        String source =
+                "fun f() { return nil + 1; }\n" +
+                "var t = spawn(f);\n" +
+                "fun g() { return join(t); }\n" +
+                "spawn(g);\n" +
+                "var u = spawn(f);\n" +
+                "join(u);\n";
+
+        // The script's join fails the script, and g fails by joining t.
+        assertEquals("1: Operands must be two numbers or two strings.\n" +
+                "1: Operands must be two numbers or two strings.\n",
+                Scripts.interpret(source));
+    }
+
+    @Test
+    public void runsEndOnlyOnceEveryTaskHasFinished() {
+        String source =
+                "fun slow() {\n" +
+                "  var i = 0;\n" +
+                "  while (i < 100000) i = i + 1;\n" +
+                "  print \"slow\";\n" +
+                "}\n" +
+                "fun parent() { spawn(slow); print \"parent\"; }\n" +
+                "spawn(parent);\n" +
+                "print \"main\";\n";
+
+        String result = Scripts.interpret(source);
+        assertEquals(result, 3, result.split("\n").length);
+        assertTrue(result, result.contains("slow\n"));
+        assertTrue(result, result.contains("parent\n"));
+        assertTrue(result, result.contains("main\n"));
+    }
+
+    @Test
+    public void engineRunsFailWhenATaskFailsUnjoined() {
+        StringBuilder errors = new StringBuilder();
+        ErrorSink sink = new ErrorSink() {
+            @Override
+            public void compileError(int line, String where, String message) {
+                errors.append(message);
+            }
+
+            @Override
+            public void runtimeError(int line, String message) {
+                errors.append(message);
+            }
+        };
+
+        try (LoxEngine engine = new LoxEngine(1)) {
+            PrintStream out = new PrintStream(new ByteArrayOutputStream());
+            LoxProgram failing = engine.compile(
+                    "fun f() { return nil + 1; } spawn(f);", sink);
+            LoxProgram fine = engine.compile(
+                    "fun f() { return 1; } spawn(f);", sink);
+
+            assertFalse(engine.run(failing, out, sink));
+            assertTrue(engine.run(fine, out, sink));
+        }
+        assertEquals("Operands must be two numbers or two strings.",
+                errors.toString());
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.lox.jlox;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NumbersTest {
+    private static double parse(String literal) {
+        // Pad the literal so parsing has to respect its bounds.
+        byte[] bytes = (" " + literal + ";").getBytes(StandardCharsets.US_ASCII);
+        return Numbers.parse(ByteBuffer.wrap(bytes), 1, bytes.length - 1);
+    }
+
+    private static void assertParses(String literal) {
+        assertEquals(literal,
+                Double.doubleToRawLongBits(Double.parseDouble(literal)),
+                Double.doubleToRawLongBits(parse(literal)));
+    }
+
+    private static String digits(Random random, int count) {
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            digits.append((char) ('0' + random.nextInt(10)));
+        }
+        return digits.toString();
+    }
+
+    @Test
+    public void parsesLiteralsLikeDoubleParseDouble() {
+        String[] literals = {
+                "0", "00", "0.0", "1", "0.1", "0.3", "1.5", "123.456",
+                "9007199254740992", "9007199254740993", "999999999999999",
+                "999999999999999.9", "1000000000000000", "0.000000000000000000001",
+                "12345678901234567890", "1.7976931348623157", "4.9",
+                "0.1000000000000000055511151231257827",
+        };
+        for (String literal : literals) assertParses(literal);
+
+        Random random = new Random(23);
+        for (int i = 0; i < 100_000; i++) {
+            // Mostly short literals, the ones the fast path takes, but
+            // long enough now and then to need the fallback.
+            int integer = 1 + random.nextInt(random.nextBoolean() ? 8 : 24);
+            int places = 1 + random.nextInt(random.nextBoolean() ? 6 : 26);
+            String literal = digits(random, integer);
+            if (random.nextBoolean()) literal += "." + digits(random, places);
+            assertParses(literal);
+        }
+    }
+
+    @Test
+    public void formatsLikeDoubleToStringWithoutTheTrailingZero() {
+        Random random = new Random(5);
+        for (int i = 0; i < 100_000; i++) {
+            double value;
+            switch (random.nextInt(4)) {
+                case 0 -> value = random.nextInt(20_000_001) - 10_000_000;
+                case 1 -> value = random.nextInt(2000) / 8.0 - 125;
+                case 2 -> value = random.nextLong();
+                default -> value = Double.longBitsToDouble(random.nextLong());
+            }
+
+            String expected = Double.toString(value);
+            if (expected.endsWith(".0")) {
+                expected = expected.substring(0, expected.length() - 2);
+            }
+            assertEquals(expected, Numbers.toString(value));
+        }
+
+        assertEquals("-0", Numbers.toString(-0.0));
+        assertEquals("9999999", Numbers.toString(9_999_999));
+        assertEquals("1.0E7", Numbers.toString(1e7));
+        assertEquals("NaN", Numbers.toString(Double.NaN));
+        assertEquals("-Infinity", Numbers.toString(Double.NEGATIVE_INFINITY));
+    }
+
+    @Test
+    public void plainIntegersAreIntegralBelowTenMillion() {
+        assertTrue(Numbers.isPlainInteger(0.0));
+        assertTrue(Numbers.isPlainInteger(-9_999_999));
+        assertTrue(Numbers.isPlainInteger(9_999_999));
+        assertFalse(Numbers.isPlainInteger(-0.0));
+        assertFalse(Numbers.isPlainInteger(10_000_000));
+        assertFalse(Numbers.isPlainInteger(0.5));
+        assertFalse(Numbers.isPlainInteger(Double.NaN));
+        assertFalse(Numbers.isPlainInteger(Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    public void writesIntegersLikeLongToString() {
+        Random random = new Random(11);
+        byte[] into = new byte[Numbers.MAX_INTEGER_LENGTH + 2];
+        long[] values = {0, 7, -7, 10, -10, Long.MAX_VALUE, Long.MIN_VALUE + 1};
+        for (int i = 0; i < 10_000 + values.length; i++) {
+            long value = i < values.length
+                    ? values[i]
+                    : random.nextLong() >> random.nextInt(64);
+            if (value == Long.MIN_VALUE) continue;
+
+            // Leave a byte after the digits to check nothing is written there.
+            into[into.length - 1] = 'x';
+            int start = Numbers.writeInteger(value, into, into.length - 1);
+            assertEquals(Long.toString(value), new String(into, start,
+                    into.length - 1 - start, StandardCharsets.US_ASCII));
+            assertEquals('x', into[into.length - 1]);
+        }
+    }
+
+    @Test
+    public void boxesSmallIntegersToSharedInstances() {
+        assertSame(Numbers.box(1), Numbers.box(1));
+        assertSame(Numbers.box(-128), Numbers.box(-128.0));
+        assertEquals(Double.valueOf(-0.0), Numbers.box(-0.0));
+        assertEquals(Double.valueOf(0.5), Numbers.box(0.5));
+        assertEquals(Double.valueOf(1e9), Numbers.box(1e9));
+    }
+}
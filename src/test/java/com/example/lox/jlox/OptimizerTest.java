@@ -0,0 +1,101 @@
+package com.example.lox.jlox;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OptimizerTest {
+    @Test
+    public void foldedStringsAreNotCountedAsConcatenations() {
+        long before = Metrics.GLOBAL.getStringsConcatenated();
+        assertEquals("cd\n", Scripts.interpret(
+                "if (false) print \"a\" + \"b\";\n" +
+                "var x = \"c\" + \"d\";\n" +
+                "print x;\n"));
+        assertEquals(before, Metrics.GLOBAL.getStringsConcatenated());
+
+        assertEquals("cde\n", Scripts.interpret(
+                "var x = \"c\" + \"d\";\n" +
+                "print x + \"e\";\n"));
+        assertEquals(before + 1, Metrics.GLOBAL.getStringsConcatenated());
+    }
+
+    private static Expr printed(String source) {
+        List<Stmt> statements = Scripts.optimize(source);
+        assertEquals(1, statements.size());
+        return ((Stmt.Print) statements.get(0)).expression;
+    }
+
+    private static void assertFoldsTo(Object expected, String expression) {
+        Expr folded = printed("print " + expression + ";");
+        assertTrue(expression, folded instanceof Expr.Literal);
+        assertEquals(expression, expected, ((Expr.Literal) folded).value);
+    }
+
+    @Test
+    public void foldsOperatorsOnLiterals() {
+        assertFoldsTo(7.0, "1 + 2 * 3");
+        assertFoldsTo(1.0, "-3 - -4");
+        assertFoldsTo(true, "!nil");
+        assertFoldsTo(false, "!0");
+        assertFoldsTo("abc", "\"a\" + \"b\" + \"c\"");
+        assertFoldsTo(true, "1 + 1 == 2");
+        assertFoldsTo("x", "nil or \"x\"");
+        assertFoldsTo(false, "false and undefined");
+        assertFoldsTo(7.0, "true and 7");
+    }
+
+    @Test
+    public void leavesWhatCannotBeFoldedForRuntime() {
+        assertTrue(printed("print 1 - \"a\";") instanceof Expr.Binary);
+
+        Expr partly = printed("print a + 2 * 3;");
+        assertTrue(partly instanceof Expr.Binary);
+        assertTrue(((Expr.Binary) partly).right instanceof Expr.Literal);
+
+        assertEquals("1: Operands must be numbers.\n",
+                Scripts.interpret("print 1 - \"a\";"));
+    }
+
+    @Test
+    public void dropsBranchesAndLoopsThatCannotRun() {
+        List<Stmt> statements = Scripts.optimize(
+                "if (1 > 2) print \"no\"; else print \"yes\";\n" +
+                "if (false) { print undefined; }\n" +
+                "while (false) print \"never\";\n" +
+                "1 + 2;\n" +
+                "{ 3; }\n");
+
+        assertEquals(1, statements.size());
+        Expr kept = ((Stmt.Print) statements.get(0)).expression;
+        assertEquals("yes", ((Expr.Literal) kept).value);
+    }
+
+    @Test
+    public void runsScriptsLikeTheUnoptimizedTree() {
+        String[] scripts = {
+                "print 1 + 2 * 3; print -0; print 1 / 0; print 0 / 0 == 0 / 0;\n" +
+                "print \"a\" + \"b\" == \"ab\"; print !nil and 1 or 2;\n",
+                "var a = 2; print a * 3 + 1 - a / 4; print -a + 2;\n" +
+                "if (a > 1) print \"big\"; else print \"small\";\n",
+                "fun loop() {\n" +
+                "  var i = 0;\n" +
+                "  for (;;) { i = i + 1; if (i > 3) return i; }\n" +
+                "}\n" +
+                "print loop();\n" +
+                "fun f() { if (true) return 1; return undefined; }\n" +
+                "print f();\n",
+                "var x = 1; { var x = x + 2 * 3; print x; }\n" +
+                "fun side() { print \"side\"; return 1; }\n" +
+                "print nil - side();\n",
+        };
+
+        for (String source : scripts) {
+            assertEquals(source, Scripts.interpretUnoptimized(source),
+                    Scripts.interpret(source));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.lox.jlox;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProfilerTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recursiveCallsAddToTotalTimeOnce() throws IOException {
+        String source =
+                "fun even(n) { if (n == 0) return true; return !odd(n - 1); }\n" +
+                "fun odd(n) { if (n == 0) return false; return !even(n - 1); }\n" +
+                "for (var i = 0; i < 20; i = i + 1) even(500);\n";
+
+        ErrorReporter reporter = new ErrorReporter(new ErrorSink() {
+            @Override
+            public void compileError(int line, String where, String message) {
+                throw new AssertionError(message);
+            }
+
+            @Override
+            public void runtimeError(int line, String message) {
+                throw new AssertionError(message);
+            }
+        });
+        Interpreter interpreter = new Interpreter(reporter,
+                new PrintStream(new ByteArrayOutputStream()));
+        Profiler profiler = new Profiler();
+        interpreter.profile = profiler.scriptStack();
+
+        long start = System.nanoTime();
+        interpreter.interpret(Scripts.optimize(source));
+        double elapsedMillis = (System.nanoTime() - start) / 1e6;
+
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        profiler.finish(folder.newFile().toPath(),
+                new PrintStream(report, true, StandardCharsets.UTF_8));
+
+        // Rows are: calls, total ms, self ms, function.
+        Map<String, String[]> rows = new HashMap<>();
+        for (String line : report.toString(StandardCharsets.UTF_8).split("\n")) {
+            String[] columns = line.trim().split("\\s+");
+            if (columns.length == 4) rows.put(columns[3], columns);
+        }
+
+        String[] even = rows.get("even:1");
+        String[] odd = rows.get("odd:2");
+        assertEquals("5020", even[0]);
+        assertEquals("5000", odd[0]);
+
+        // Counting each nested call's time again would multiply the
+        // total by the depth of the recursion.
+        double total = Double.parseDouble(even[1]);
+        assertTrue(total + " ms in " + elapsedMillis, total <= elapsedMillis);
+        assertTrue(Double.parseDouble(odd[1]) <= total);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.lox.jlox;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ResolverTest {
+    @Test
+    public void localFunctionsCanCallFunctionsDeclaredAfterThem() {
+        String source =
+                "{\n" +
+                "  fun f() { return g(); }\n" +
+                "  fun g() { return 1; }\n" +
+                "  print f();\n" +
+                "}\n" +
+                "fun parity(n) {\n" +
+                "  fun isEven(n) { if (n == 0) return true; return isOdd(n - 1); }\n" +
+                "  fun isOdd(n) { if (n == 0) return false; return isEven(n - 1); }\n" +
+                "  return isEven(n);\n" +
+                "}\n" +
+                "print parity(7);\n";
+
+        assertEquals("1\nfalse\n", Scripts.interpret(source));
+        assertEquals("1\nfalse\n", Scripts.runOnVm(source));
+    }
+
+    @Test
+    public void blockSeesOuterVariableUntilLocalFunctionIsDeclared() {
+        String source =
+                "fun h() { return \"global\"; }\n" +
+                "{\n" +
+                "  print h();\n" +
+                "  fun h() { return \"local\"; }\n" +
+                "  print h();\n" +
+                "}\n";
+
+        assertEquals("global\nlocal\n", Scripts.interpret(source));
+        assertEquals("global\nlocal\n", Scripts.runOnVm(source));
+    }
+
+    @Test
+    public void closuresSeeTheVariablesInScopeWhereTheyAreDeclared() {
+        String source =
+                "var a = \"global\";\n" +
+                "{\n" +
+                "  fun show() { print a; }\n" +
+                "  show();\n" +
+                "  var a = \"block\";\n" +
+                "  show();\n" +
+                "}\n";
+
+        assertEquals("global\nglobal\n", Scripts.interpret(source));
+        assertEquals("global\nglobal\n", Scripts.runOnVm(source));
+    }
+
+    @Test
+    public void onlyGlobalNamesAreInterned() {
+        String source =
+                "var resolverTestGlobal = 1;\n" +
+                "fun resolverTestFunction(resolverTestParameter) {\n" +
+                "  var resolverTestLocal = resolverTestParameter;\n" +
+                "  return resolverTestLocal + resolverTestUndefined;\n" +
+                "}\n" +
+                "{ var resolverTestBlockLocal = 2; }\n";
+
+        assertEquals("", Scripts.interpret(source));
+
+        SymbolTable symbols = SymbolTable.GLOBAL;
+        assertNotEquals(-1, symbols.lookup("resolverTestGlobal"));
+        assertNotEquals(-1, symbols.lookup("resolverTestFunction"));
+        assertNotEquals(-1, symbols.lookup("resolverTestUndefined"));
+        assertEquals(-1, symbols.lookup("resolverTestParameter"));
+        assertEquals(-1, symbols.lookup("resolverTestLocal"));
+        assertEquals(-1, symbols.lookup("resolverTestBlockLocal"));
+    }
+}
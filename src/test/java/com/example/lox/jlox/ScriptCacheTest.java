@@ -0,0 +1,116 @@
+package com.example.lox.jlox;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ScriptCacheTest {
+    // Every kind of node the parser builds, with each literal and optional
+    // child the cache stores.
+    private static final String SOURCE =
+            "var none;\n" +
+            "var a = 1.5; var b = \"text\"; var c = true and !false or nil;\n" +
+            "a = -a * 2 - 3 / 4;\n" +
+            "fun add(x, y) { return x + y; }\n" +
+            "fun nothing() { return; }\n" +
+            "if (a < 0) { print add(a, 1); } else print \"no\";\n" +
+            "if (c) print c;\n" +
+            "for (var i = 0; i < 3; i = i + 1) print b + \"!\";\n" +
+            "print nothing();\n" +
+            "print \"héllo\" + none;\n";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<Stmt> parse(String source) {
+        ErrorReporter reporter = new ErrorReporter(new ErrorSink() {
+            @Override
+            public void compileError(int line, String where, String message) {
+                throw new AssertionError(line + where + ": " + message);
+            }
+
+            @Override
+            public void runtimeError(int line, String message) {
+                throw new AssertionError(line + ": " + message);
+            }
+        });
+        return new Parser(new Scanner(source, reporter), reporter).parse();
+    }
+
+    private static String key(String source) {
+        return ScriptCache.key(ByteBuffer.wrap(
+                source.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void loadsTheTreeThatWasStored() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        ScriptCache cache = new ScriptCache(directory);
+        String key = key(SOURCE);
+        List<Stmt> parsed = parse(SOURCE);
+
+        cache.store(key, parsed);
+        List<Stmt> loaded = cache.load(key);
+        assertNotNull(loaded);
+
+        // Storing the loaded tree again gives the same bytes, so nothing
+        // was lost or changed on the way through.
+        String again = key(SOURCE + " ");
+        cache.store(again, loaded);
+        assertArrayEquals(
+                Files.readAllBytes(directory.resolve(key + ".lxc")),
+                Files.readAllBytes(directory.resolve(again + ".lxc")));
+
+        assertEquals(Scripts.interpret(parsed), Scripts.interpret(loaded));
+    }
+
+    @Test
+    public void keepsLinesForRuntimeErrors() {
+        String source = "print 1;\n\nprint 1 - \"a\";\n";
+        ScriptCache cache = new ScriptCache(folder.getRoot().toPath());
+        cache.store(key(source), parse(source));
+
+        assertEquals("1\n3: Operands must be numbers.\n",
+                Scripts.interpret(cache.load(key(source))));
+    }
+
+    @Test
+    public void missesOnMissingOrDamagedEntries() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        ScriptCache cache = new ScriptCache(directory);
+        String key = key(SOURCE);
+        assertNull(cache.load(key));
+
+        cache.store(key, parse(SOURCE));
+        Path entry = directory.resolve(key + ".lxc");
+        byte[] bytes = Files.readAllBytes(entry);
+
+        Files.write(entry, Arrays.copyOf(bytes, bytes.length / 2));
+        assertNull(cache.load(key));
+
+        bytes[0] ^= 1;
+        Files.write(entry, bytes);
+        assertNull(cache.load(key));
+    }
+
+    @Test
+    public void keysDependOnlyOnTheSource() {
+        assertEquals(key(SOURCE), key(SOURCE));
+        assertEquals(64, key(SOURCE).length());
+        assertNotEquals(key(SOURCE), key(SOURCE + "\n"));
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.lox.jlox;
+
+import com.example.lox.jlox.vm.CompiledFunction;
+import com.example.lox.jlox.vm.VM;
+import com.example.lox.jlox.vm.VmError;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+
+/**
+ * Runs Lox source the way the jlox command does and returns what it
+ * printed. Errors follow the output, one per line, as
+ * {@code <line> <where>: <message>} for compile errors and
+ * {@code <line>: <message>} for runtime errors. Like the jlox command,
+ * scripts run on a thread with room for the calls they are allowed.
+ */
+final class Scripts {
+    private Scripts() {
+    }
+
+    /** Runs the source in the tree-walking interpreter. */
+    static String interpret(String source) {
+        return interpret(source, Interpreter.DEFAULT_MAX_CALL_DEPTH);
+    }
+
+    static String interpret(String source, int maxCallDepth) {
+        return onLoxThread(maxCallDepth,
+                () -> interpretHere(source, maxCallDepth, true));
+    }
+
+    /** Runs the source in the interpreter as parsed, like --no-optimize. */
+    static String interpretUnoptimized(String source) {
+        int maxCallDepth = Interpreter.DEFAULT_MAX_CALL_DEPTH;
+        return onLoxThread(maxCallDepth,
+                () -> interpretHere(source, maxCallDepth, false));
+    }
+
+    /** Resolves and runs an already parsed tree in the interpreter. */
+    static String interpret(List<Stmt> parsed) {
+        int maxCallDepth = Interpreter.DEFAULT_MAX_CALL_DEPTH;
+        return onLoxThread(maxCallDepth, () -> {
+            Run run = new Run();
+            run(run, run.check(parsed, true), maxCallDepth);
+            return run.result();
+        });
+    }
+
+    /** Parses, resolves and optimizes the source, or returns null on errors. */
+    static List<Stmt> optimize(String source) {
+        return new Run().check(source, true);
+    }
+
+    /** Compiles the source to bytecode and runs it in the VM. */
+    static String runOnVm(String source) {
+        return runOnVm(source, VM.DEFAULT_MAX_DEPTH);
+    }
+
+    static String runOnVm(String source, int maxDepth) {
+        return onLoxThread(maxDepth, () -> runOnVmHere(source, maxDepth));
+    }
+
+    private static String interpretHere(String source, int maxCallDepth,
+                                        boolean optimize) {
+        Run run = new Run();
+        run(run, run.check(source, optimize), maxCallDepth);
+        return run.result();
+    }
+
+    private static void run(Run run, List<Stmt> statements, int maxCallDepth) {
+        if (statements == null) return;
+
+        Interpreter interpreter = new Interpreter(run.reporter, run.out);
+        interpreter.maxCallDepth = maxCallDepth;
+        interpreter.interpret(statements);
+    }
+
+    private static String runOnVmHere(String source, int maxDepth) {
+        Run run = new Run();
+        List<Stmt> statements = run.check(source, true);
+        if (statements == null) return run.result();
+
+        CompiledFunction script = new Compiler(run.reporter).compile(statements);
+        if (!run.reporter.hadError) {
+            try {
+                new VM(maxDepth, run.out).interpret(script);
+            } catch (VmError error) {
+                run.reporter.runtimeError(error.line, error.getMessage());
+            }
+        }
+        return run.result();
+    }
+
+    private static String onLoxThread(int maxCallDepth, Supplier<String> script) {
+        FutureTask<String> task = new FutureTask<>(script::get);
+        new Thread(null, task, "lox", Interpreter.stackSize(maxCallDepth))
+                .start();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static final class Run {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final PrintStream out =
+                new PrintStream(output, true, StandardCharsets.UTF_8);
+        final StringBuilder errors = new StringBuilder();
+        final ErrorReporter reporter = new ErrorReporter(new ErrorSink() {
+            @Override
+            public void compileError(int line, String where, String message) {
+                errors.append(line).append(' ').append(where).append(": ")
+                        .append(message).append('\n');
+            }
+
+            @Override
+            public void runtimeError(int line, String message) {
+                errors.append(line).append(": ").append(message).append('\n');
+            }
+        });
+
+        List<Stmt> check(String source, boolean optimize) {
+            List<Stmt> statements =
+                    new Parser(new Scanner(source, reporter), reporter).parse();
+            if (reporter.hadError) return null;
+
+            return check(statements, optimize);
+        }
+
+        List<Stmt> check(List<Stmt> statements, boolean optimize) {
+            new Resolver(reporter).resolve(statements);
+            if (reporter.hadError) return null;
+
+            return optimize
+                    ? new Optimizer().optimize(statements)
+                    : statements;
+        }
+
+        String result() {
+            out.flush();
+            return output.toString(StandardCharsets.UTF_8) + errors;
+        }
+    }
+}
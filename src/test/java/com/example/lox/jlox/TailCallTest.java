@@ -0,0 +1,62 @@
+package com.example.lox.jlox;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TailCallTest {
+    private static void assertBothEngines(String expected, String source,
+                                          int maxDepth) {
+        assertEquals(expected, Scripts.interpret(source, maxDepth));
+        assertEquals(expected, Scripts.runOnVm(source, maxDepth));
+    }
+
+    @Test
+    public void tailCallsDoNotCountTowardsTheCallDepth() {
+        String source =
+                "fun count(n, total) {\n" +
+                "  if (n == 0) return total;\n" +
+                "  return count(n - 1, total + 1);\n" +
+                "}\n" +
+                "print count(100000, 0);\n";
+
+        assertBothEngines("100000\n", source, 50);
+    }
+
+    @Test
+    public void mutuallyRecursiveTailCallsRunInOneFrame() {
+        String source =
+                "fun even(n) { if (n == 0) return true; return odd(n - 1); }\n" +
+                "fun odd(n) { if (n == 0) return false; return even(n - 1); }\n" +
+                "print even(10001);\n" +
+                "print odd(10001);\n";
+
+        assertBothEngines("false\ntrue\n", source, 50);
+    }
+
+    @Test
+    public void capturedVariablesOutliveTheReplacedFrame() {
+        String source =
+                "fun call(f) { return f(); }\n" +
+                "fun outer(n) {\n" +
+                "  var doubled = n * 2;\n" +
+                "  fun inner() { return doubled + n; }\n" +
+                "  return call(inner);\n" +
+                "}\n" +
+                "print outer(5);\n";
+
+        assertBothEngines("15\n", source, 50);
+    }
+
+    @Test
+    public void tailCallsToOtherCalleesAreOrdinaryCalls() {
+        String source =
+                "fun now() { return clock(); }\n" +
+                "print now() > 0;\n" +
+                "fun bad() { var x = 1; return x(); }\n" +
+                "bad();\n";
+
+        assertBothEngines("true\n3: Can only call functions and classes.\n",
+                source, 50);
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.lox.jlox;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VmTest {
+    private static final String[] SCRIPTS = {
+            // Arithmetic, comparison and printing of numbers.
+            "print 1 + 2 * 3 - 4 / 8;\n" +
+            "print -0; print 0 * -1; print 1 / 0; print 0.1 + 0.2;\n" +
+            "print 1000 * 1000; print 10 / 4; print 12345678;\n" +
+            "var a = 2; print a * 3 + 1 - a / 4;\n" +
+            "print 0 / 0 == 0 / 0; print 3 >= 3; print 2 < 1;\n",
+
+            // Truthiness, equality and logical operators.
+            "print !nil; print !0; print nil or \"x\"; print false and y;\n" +
+            "print true and 7; print nil == nil; print nil != false;\n" +
+            "print \"a\" + \"b\" == \"ab\"; print 1 == \"1\";\n",
+
+            // Strings built up in a loop.
+            "var s = \"\";\n" +
+            "for (var i = 0; i < 5; i = i + 1) s = s + \"ab\";\n" +
+            "print s;\n" +
+            "var t = \"x\"; var n = 0;\n" +
+            "while (n < 3) { t = t + t; n = n + 1; }\n" +
+            "print t;\n",
+
+            // Scopes, shadowing and redeclaration.
+            "var a = \"global\";\n" +
+            "{ fun show() { print a; } show(); var a = \"block\"; show(); print a; }\n" +
+            "{ var b = 1; fun g() { print b; } var b = 5; g(); }\n" +
+            "fun dup(a, a) { print a; }\n" +
+            "dup(1, 2);\n" +
+            "var c = 1; { var c = c + 2; print c; } print c;\n",
+
+            // Closures over locals, loop variables and outer functions.
+            "fun counter() {\n" +
+            "  var c = 0;\n" +
+            "  fun inc() { c = c + 1; return c; }\n" +
+            "  inc(); inc();\n" +
+            "  return inc;\n" +
+            "}\n" +
+            "var inc = counter(); print inc(); print inc();\n" +
+            "var kept = nil;\n" +
+            "for (var k = 0; k < 3; k = k + 1) {\n" +
+            "  var m = k; fun cap() { return m; } if (k == 1) kept = cap;\n" +
+            "}\n" +
+            "print kept();\n" +
+            "fun outer() {\n" +
+            "  var x = 1;\n" +
+            "  fun mid() { var y = 2; fun inner() { x = x + y; return x; } return inner; }\n" +
+            "  return mid();\n" +
+            "}\n" +
+            "var f = outer(); print f(); print f();\n",
+
+            // Functions as values, returns and natives.
+            "fun one() { return 1; }\n" +
+            "fun pick(f) { return f(); }\n" +
+            "print pick(one); print pick(clock) > 0;\n" +
+            "fun noReturn() {}\n" +
+            "print noReturn();\n" +
+            "fun early(n) { while (true) { if (n > 3) return n; n = n + 1; } }\n" +
+            "print early(0);\n" +
+            "print one; print clock;\n",
+
+            // Runtime errors stop the script after what it printed so far.
+            "print \"before\";\nprint 1 - \"a\";\nprint \"after\";\n",
+            "fun f(a) {}\nf(1, 2);\n",
+            "print undefinedVariable;\n",
+            "var s = \"a\"; s();\n",
+            "print 1 < nil;\n",
+            "undefinedVariable = 1;\n",
+    };
+
+    private static void assertSameOutput(String source) {
+        assertEquals(source, Scripts.interpret(source), Scripts.runOnVm(source));
+    }
+
+    @Test
+    public void printsWhatTheInterpreterPrints() {
+        for (String source : SCRIPTS) assertSameOutput(source);
+    }
+
+    @Test
+    public void runsTheSampleScriptsLikeTheInterpreter() throws IOException {
+        int count = 0;
+        try (DirectoryStream<Path> scripts =
+                     Files.newDirectoryStream(Paths.get("lox"), "*.lx")) {
+            for (Path script : scripts) {
+                assertSameOutput(new String(Files.readAllBytes(script),
+                        StandardCharsets.UTF_8));
+                count++;
+            }
+        }
+
+        assertTrue(count > 0);
+    }
+}